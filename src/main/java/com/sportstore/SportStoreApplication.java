@@ -37,6 +37,7 @@ public class SportStoreApplication {
                         )
                         .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                         .allowedHeaders("*")
+                        .exposedHeaders("X-Total-Count", "X-Next-Offset", "X-Catalog-Version", "X-Request-Id")
                         .allowCredentials(true)
                         .maxAge(3600);
             }
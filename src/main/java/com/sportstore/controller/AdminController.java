@@ -1,18 +1,49 @@
 package com.sportstore.controller;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.sportstore.model.BulkImportResult;
+import com.sportstore.model.CartStoreStats;
+import com.sportstore.model.PersistenceStats;
 import com.sportstore.model.Product;
+import com.sportstore.model.PromoCode;
+import com.sportstore.service.CartService;
 import com.sportstore.service.DataService;
+import com.sportstore.service.JsonCodec;
+import com.sportstore.service.PersistenceService;
+import com.sportstore.service.PromoService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/admin")
 public class AdminController {
 
+    private static final Logger log = LoggerFactory.getLogger(AdminController.class);
+
     @Autowired
     private DataService dataService;
 
+    @Autowired
+    private PersistenceService persistenceService;
+
+    @Autowired
+    private JsonCodec jsonCodec;
+
+    @Autowired
+    private PromoService promoService;
+
+    @Autowired
+    private CartService cartService;
+
     // API: Thêm sản phẩm mới
     @PostMapping("/products/add")
     public ResponseEntity<Product> addProduct(@RequestBody Product product) {
@@ -20,7 +51,7 @@ public class AdminController {
             Product saved = dataService.addProduct(product);
             return ResponseEntity.ok(saved);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.warn("Thêm sản phẩm thất bại", e);
             return ResponseEntity.badRequest().build();
         }
     }
@@ -29,15 +60,14 @@ public class AdminController {
     @PutMapping("/products/update/{id}")
     public ResponseEntity<Product> updateProduct(@PathVariable int id, @RequestBody Product product) {
         try {
-            System.out.println("Updating product ID: " + id);
-            System.out.println("Product data: " + product.getName());
+            log.debug("Updating product id={}, name={}", id, product.getName());
             Product updated = dataService.updateProduct(id, product);
             if (updated == null) {
                 return ResponseEntity.notFound().build();
             }
             return ResponseEntity.ok(updated);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.warn("Cập nhật sản phẩm {} thất bại", id, e);
             return ResponseEntity.badRequest().build();
         }
     }
@@ -49,8 +79,93 @@ public class AdminController {
             boolean deleted = dataService.deleteProduct(id);
             return ResponseEntity.ok(deleted);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.warn("Xóa sản phẩm {} thất bại", id, e);
             return ResponseEntity.badRequest().build();
         }
     }
+
+    // API: Import/upsert sản phẩm hàng loạt
+    // Body: mảng JSON [ {...}, {...} ] hoặc NDJSON (mỗi dòng một sản phẩm, Content-Type: application/x-ndjson)
+    // Sản phẩm có id đã tồn tại sẽ được ghi đè, không có id sẽ được cấp id mới
+    @PostMapping(value = "/products/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson"})
+    public ResponseEntity<BulkImportResult> bulkUpsert(HttpServletRequest request) {
+        List<Product> batch = new ArrayList<>();
+        // readValues đọc lần lượt từng phần tử của mảng gốc, hoặc từng object của NDJSON
+        try (MappingIterator<Product> it = jsonCodec.productReader().readValues(request.getInputStream())) {
+            while (it.hasNext()) {
+                batch.add(it.next());
+            }
+        } catch (Exception e) {
+            BulkImportResult error = new BulkImportResult();
+            error.setReceived(batch.size());
+            error.getErrors().add("JSON không hợp lệ sau phần tử #" + batch.size() + ": " + e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+        return ResponseEntity.ok(dataService.bulkUpsert(batch));
+    }
+
+    // API: Danh sách mã giảm giá
+    @GetMapping("/promos")
+    public ResponseEntity<List<PromoCode>> getPromoCodes() {
+        return ResponseEntity.ok(promoService.getAll());
+    }
+
+    // API: Chi tiết một mã giảm giá
+    @GetMapping("/promos/{code}")
+    public ResponseEntity<PromoCode> getPromoCode(@PathVariable String code) {
+        PromoCode promo = promoService.getByCode(code);
+        return promo != null ? ResponseEntity.ok(promo) : ResponseEntity.notFound().build();
+    }
+
+    // API: Tạo mới mã giảm giá (ghi đè nếu đã có mã trùng tên)
+    // Body: { "code": "SUMMER10", "discountPercent": 0.1, "maxUsesPerUser": 1, "maxTotalUses": 500,
+    //         "validFrom": 1767225600000, "validUntil": 1769904000000, "categories": ["shoes"],
+    //         "minSubtotal": 500000, "excludeDiscounted": true, "active": true, "description": "..." }
+    @PostMapping("/promos")
+    public ResponseEntity<?> createPromoCode(@RequestBody PromoCode promo) {
+        try {
+            return ResponseEntity.ok(promoService.save(promo));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // API: Cập nhật mã giảm giá
+    @PutMapping("/promos/{code}")
+    public ResponseEntity<?> updatePromoCode(@PathVariable String code, @RequestBody PromoCode promo) {
+        if (promoService.getByCode(code) == null) {
+            return ResponseEntity.notFound().build();
+        }
+        promo.setCode(code);
+        try {
+            return ResponseEntity.ok(promoService.save(promo));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // API: Xóa mã giảm giá (số lượt đã dùng vẫn được giữ lại)
+    @DeleteMapping("/promos/{code}")
+    public ResponseEntity<Boolean> deletePromoCode(@PathVariable String code) {
+        return ResponseEntity.ok(promoService.delete(code));
+    }
+
+    // API: Thống kê kho giỏ hàng (số giỏ, evict, bộ nhớ ước lượng, spill)
+    @GetMapping("/carts")
+    public ResponseEntity<CartStoreStats> getCartStats() {
+        return ResponseEntity.ok(cartService.getStoreStats());
+    }
+
+    // API: Thống kê ghi file nền (số lần gộp, độ trễ ghi)
+    @GetMapping("/persistence")
+    public List<PersistenceStats> persistenceStats() {
+        return persistenceService.getStats();
+    }
+
+    // API: Ghi ngay các thay đổi đang chờ
+    @PostMapping("/persistence/flush")
+    public List<PersistenceStats> flushPersistence() {
+        persistenceService.flushAll();
+        return persistenceService.getStats();
+    }
 }
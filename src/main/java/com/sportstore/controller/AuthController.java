@@ -3,10 +3,16 @@ package com.sportstore.controller;
 import com.sportstore.model.AuthResponse;
 import com.sportstore.model.User;
 import com.sportstore.service.AuthService;
+import com.sportstore.service.CartService;
+import com.sportstore.service.PasswordHasher;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -17,13 +23,19 @@ import jakarta.servlet.http.HttpSession;
 @RequestMapping("/api/auth")
 public class AuthController {
 
+    private static final Logger log = LoggerFactory.getLogger(AuthController.class);
+
     @Autowired
     private AuthService authService;
 
+    @Autowired
+    private CartService cartService;
+
     // API 1: Đăng ký
     // URL: POST http://localhost:8080/api/auth/register
+    // Băm mật khẩu chạy trên pool băm, thread của request được trả lại ngay (Spring trả response khi future xong)
     @PostMapping("/register")
-    public AuthResponse register(
+    public CompletableFuture<AuthResponse> register(
             @RequestParam String firstName,
             @RequestParam String lastName,
             @RequestParam String email,
@@ -36,53 +48,74 @@ public class AuthController {
             lastName == null || lastName.isEmpty() ||
             email == null || email.isEmpty() ||
             password == null || password.isEmpty()) {
-            return new AuthResponse(false, "Vui lòng điền đầy đủ thông tin");
+            return CompletableFuture.completedFuture(new AuthResponse(false, "Vui lòng điền đầy đủ thông tin"));
         }
 
         // Kiểm tra email đã tồn tại
         if (authService.getUserByEmail(email) != null) {
-            return new AuthResponse(false, "Email đã được đăng ký");
+            return CompletableFuture.completedFuture(new AuthResponse(false, "Email đã được đăng ký"));
         }
 
         // Tạo user mới
-        User newUser = authService.register(firstName, lastName, email, phone, password);
+        return authService.register(firstName, lastName, email, phone, password)
+                .thenApply(newUser -> registered(newUser, session))
+                .exceptionally(AuthController::busy);
+    }
 
+    private AuthResponse registered(User newUser, HttpSession session) {
         if (newUser != null) {
             // Lưu user vào session
             session.setAttribute("userId", newUser.getId());
             session.setAttribute("userEmail", newUser.getEmail());
             session.setAttribute("userName", newUser.getFirstName() + " " + newUser.getLastName());
             session.setAttribute("userAvatar", newUser.getAvatar());
+            // Giỏ đang chọn khi chưa có tài khoản chuyển thành giỏ của user
+            cartService.loginSession(session, newUser.getId());
 
             return new AuthResponse(true, "Đăng ký thành công", newUser);
         } else {
             return new AuthResponse(false, "Đăng ký thất bại");
         }
     }
+
+    // Pool băm mật khẩu quá tải: trả lời ngay để client thử lại, không để request xếp hàng
+    private static AuthResponse busy(Throwable error) {
+        if (PasswordHasher.isOverloaded(error)) {
+            return new AuthResponse(false, "Hệ thống đang bận, vui lòng thử lại sau");
+        }
+        throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+    }
     
 
     // API 2: Đăng nhập
     // URL: POST http://localhost:8080/api/auth/login
+    // Kiểm tra mật khẩu chạy trên pool băm như register; đăng nhập lặp lại gần đây được trả ngay từ cache
     @PostMapping("/login")
-    public AuthResponse login(
+    public CompletableFuture<AuthResponse> login(
             @RequestParam String email,
             @RequestParam String password,
             HttpSession session
     ) {
         // Kiểm tra dữ liệu
         if (email == null || email.isEmpty() || password == null || password.isEmpty()) {
-            return new AuthResponse(false, "Vui lòng điền đầy đủ thông tin");
+            return CompletableFuture.completedFuture(new AuthResponse(false, "Vui lòng điền đầy đủ thông tin"));
         }
 
         // Kiểm tra đăng nhập
-        User user = authService.login(email, password);
+        return authService.login(email, password)
+                .thenApply(user -> loggedIn(user, session))
+                .exceptionally(AuthController::busy);
+    }
 
+    private AuthResponse loggedIn(User user, HttpSession session) {
         if (user != null) {
             // Lưu user vào session
             session.setAttribute("userId", user.getId());
             session.setAttribute("userEmail", user.getEmail());
             session.setAttribute("userName", user.getFirstName() + " " + user.getLastName());
             session.setAttribute("userAvatar", user.getAvatar());
+            // Gộp giỏ khách vãng lai vào giỏ của user (giỏ dùng chung trên mọi thiết bị)
+            cartService.loginSession(session, user.getId());
 
             return new AuthResponse(true, "Đăng nhập thành công", user);
         } else {
@@ -152,12 +185,7 @@ public class AuthController {
         
         String email = request.get("email");
         
-        System.out.println("=== SYNC SESSION ===");
-        System.out.println("Email from request: " + email);
-        System.out.println("Current session ID: " + session.getId());
-        
         if (email == null || email.isEmpty()) {
-            System.out.println("Email is null or empty");
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
             response.put("message", "Email is required");
@@ -166,16 +194,25 @@ public class AuthController {
         
         User user = authService.getUserByEmail(email);
         
+        // Session đã đăng nhập (bằng mật khẩu) tài khoản khác thì không cho đổi sang email này
+        Object authUserId = session.getAttribute(CartService.AUTH_USER_ID);
+        if (user != null && authUserId != null && !authUserId.equals(user.getId())) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Session is logged in as another user");
+            return ResponseEntity.status(403).body(response);
+        }
+        
         if (user != null) {
             // Force set session attributes
             session.setAttribute("userId", user.getId());
             session.setAttribute("userEmail", user.getEmail());
             session.setAttribute("userName", user.getFirstName() + " " + user.getLastName());
             session.setAttribute("userAvatar", user.getAvatar());
+            // Không gắn giỏ hàng chung của user: endpoint này chỉ nhận email, không có mật khẩu,
+            // nên session được đồng bộ kiểu này vẫn dùng giỏ riêng của session
             
-            System.out.println("✓ Session synced for user: " + user.getEmail());
-            System.out.println("Session userId: " + session.getAttribute("userId"));
-            System.out.println("Session userEmail: " + session.getAttribute("userEmail"));
+            log.debug("Session synced for user {}", user.getEmail());
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -183,7 +220,7 @@ public class AuthController {
             response.put("message", "Session synced successfully");
             return ResponseEntity.ok(response);
         } else {
-            System.out.println("User not found for email: " + email);
+            log.debug("Sync session: user not found for email {}", email);
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
             response.put("message", "User not found");
@@ -3,6 +3,8 @@ package com.sportstore.controller;
 import com.sportstore.model.CartItem;
 import com.sportstore.model.CartResponse;
 import com.sportstore.service.CartService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
@@ -16,6 +18,8 @@ import jakarta.servlet.http.HttpSession;
 @RequestMapping("/api/cart")
 public class CartController {
 
+    private static final Logger log = LoggerFactory.getLogger(CartController.class);
+
     @Autowired
     private CartService cartService;
 
@@ -25,21 +29,22 @@ public class CartController {
      */
     @GetMapping
     public CartResponse getCart(HttpSession session) {
-        String sessionId = session.getId();
+        String sessionId = cartService.cartSessionFor(session);
         return cartService.getCart(sessionId);
     }
 
     /**
      * Thêm sản phẩm vào giỏ hàng
      * POST /api/cart/add
-     * Body: { "id": 1, "name": "...", "price": 100000, "quantity": 2, "size": "M", "color": "Đen" }
+     * Body: { "id": 1, "quantity": 2, "size": "M", "color": "Đen" }
+     * (name/price/image nếu có sẽ bị bỏ qua, lấy từ catalog)
      */
     @PostMapping("/add")
     public CartResponse addToCart(@RequestBody CartItem item, HttpSession session) {
-        String sessionId = session.getId();
+        String sessionId = cartService.cartSessionFor(session);
         
         // Validation
-        if (item == null || item.getId() == 0 || item.getPrice() == null || item.getQuantity() == null) {
+        if (item == null || item.getId() == 0 || item.getQuantity() == null) {
             return new CartResponse();
         }
 
@@ -54,26 +59,22 @@ public class CartController {
     /**
      * Cập nhật số lượng item
      * PUT /api/cart/update/{productId}
-     * Body: { "quantity": 5, "size": "L" }
+     * Query param: quantity, size, color (color rỗng = dòng không có màu; bỏ trống = dòng đầu tiên khớp id + size)
      */
     @PutMapping("/update/{productId}")
 public CartResponse updateQuantity(
         @PathVariable int productId,
         @RequestParam int quantity,
         @RequestParam(required = false, defaultValue = "") String size,
+        @RequestParam(required = false) String color,
         HttpSession session) {
-    String sessionId = session.getId();
+    String sessionId = cartService.cartSessionFor(session);
     if (size != null && size.trim().isEmpty()) {
         size = null;
     }
-    System.out.println("=== UPDATE QUANTITY ===");
-    System.out.println("Product ID: " + productId);
-    System.out.println("Size: " + size);
-    System.out.println("New quantity: " + quantity);
-    System.out.println("Session ID: " + sessionId);
-    
-    CartResponse response = cartService.updateQuantity(sessionId, productId, size, quantity);
-    System.out.println("Cart items after update: " + response.getItems().size());
+    CartResponse response = cartService.updateQuantity(sessionId, productId, size, color, quantity);
+    log.debug("Update quantity: productId={}, size={}, color={}, quantity={}, items={}",
+            productId, size, color, quantity, response.getItems().size());
     
     return response;
 }
@@ -81,24 +82,21 @@ public CartResponse updateQuantity(
     /**
      * Xóa item khỏi giỏ
      * DELETE /api/cart/remove/{productId}
-     * Query param: size (mặc định "M")
+     * Query param: size, color (bỏ trống color = xóa mọi màu của id + size)
      */
     @DeleteMapping("/remove/{productId}")
 public CartResponse removeFromCart(
         @PathVariable int productId,
         @RequestParam(required = false, defaultValue = "") String size,
+        @RequestParam(required = false) String color,
         HttpSession session) {
-    String sessionId = session.getId();
+    String sessionId = cartService.cartSessionFor(session);
     if (size != null && size.trim().isEmpty()) {
         size = null;
     }
-    System.out.println("=== REMOVE ITEM ===");
-    System.out.println("Product ID: " + productId);
-    System.out.println("Size: " + size);
-    System.out.println("Session ID: " + sessionId);
-    
-    CartResponse response = cartService.removeFromCart(sessionId, productId, size);
-    System.out.println("Cart items after remove: " + response.getItems().size());
+    CartResponse response = cartService.removeFromCart(sessionId, productId, size, color);
+    log.debug("Remove item: productId={}, size={}, color={}, items={}",
+            productId, size, color, response.getItems().size());
     
     return response;
 }
@@ -109,7 +107,7 @@ public CartResponse removeFromCart(
      */
     @DeleteMapping("/clear")
     public void clearCart(HttpSession session) {
-        String sessionId = session.getId();
+        String sessionId = cartService.cartSessionFor(session);
         cartService.clearCart(sessionId);
     }
 
@@ -119,7 +117,7 @@ public CartResponse removeFromCart(
      */
     @GetMapping("/count")
     public int getCartCount(HttpSession session) {
-        String sessionId = session.getId();
+        String sessionId = cartService.cartSessionFor(session);
         return cartService.getCartTotalQuantity(sessionId);
     }
 
@@ -129,14 +127,8 @@ public CartResponse removeFromCart(
      */
     @PostMapping("/checkout")
 public CartResponse checkout(HttpSession session) {
-    String sessionId = session.getId();
-    CartResponse cart = cartService.getCart(sessionId);
-    
-    if (!cart.isEmpty()) {
-        cartService.checkout(sessionId);
-    }
-    
-    return cart;
+    String sessionId = cartService.cartSessionFor(session);
+    return cartService.checkout(sessionId);
 }
 
     /**
@@ -145,7 +137,7 @@ public CartResponse checkout(HttpSession session) {
      */
     @GetMapping("/status")
     public CartResponse getCartStatus(HttpSession session) {
-        String sessionId = session.getId();
+        String sessionId = cartService.cartSessionFor(session);
         return cartService.getCart(sessionId);
     }
 }
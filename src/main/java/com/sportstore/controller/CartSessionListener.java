@@ -0,0 +1,25 @@
+package com.sportstore.controller;
+
+import com.sportstore.service.CartService;
+import jakarta.servlet.http.HttpSessionEvent;
+import jakarta.servlet.http.HttpSessionListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Session hết hạn (hoặc bị invalidate) thì giải phóng giỏ hàng của nó ngay,
+ * không để giỏ bị bỏ quên nằm trong bộ nhớ chờ đến lượt quét TTL
+ */
+@Component
+public class CartSessionListener implements HttpSessionListener {
+
+    private final CartService cartService;
+
+    public CartSessionListener(CartService cartService) {
+        this.cartService = cartService;
+    }
+
+    @Override
+    public void sessionDestroyed(HttpSessionEvent event) {
+        cartService.sessionExpired(event.getSession().getId());
+    }
+}
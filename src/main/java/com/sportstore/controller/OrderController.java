@@ -1,8 +1,12 @@
 package com.sportstore.controller;
 
 import com.sportstore.model.Order;
+import com.sportstore.model.OrderHistoryPage;
 import com.sportstore.model.PromoCodeResponse;
+import com.sportstore.service.CartService;
 import com.sportstore.service.OrderService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -20,9 +24,14 @@ import java.util.Map;
 @RequestMapping("/api/orders")
 public class OrderController {
 
+    private static final Logger log = LoggerFactory.getLogger(OrderController.class);
+
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private CartService cartService;
+
     /**
      * Kiểm tra mã giảm giá
      * POST /api/orders/validate-promo
@@ -33,12 +42,23 @@ public class OrderController {
             @RequestBody Map<String, String> request,
             HttpSession session) {
         String code = request.get("code");
-        String sessionId = session.getId();
+        String sessionId = cartService.cartSessionFor(session);
+        String userEmail = (String) session.getAttribute("userEmail");
         
-        PromoCodeResponse response = orderService.validatePromoCode(sessionId, code);
+        PromoCodeResponse response = orderService.validatePromoCode(sessionId, userEmail, code);
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Các mã giảm giá áp dụng được cho giỏ hàng hiện tại (giảm nhiều nhất trước)
+     * GET /api/orders/applicable-promos
+     */
+    @GetMapping("/applicable-promos")
+    public ResponseEntity<List<PromoCodeResponse>> getApplicablePromos(HttpSession session) {
+        String userEmail = (String) session.getAttribute("userEmail");
+        return ResponseEntity.ok(orderService.getApplicablePromoCodes(cartService.cartSessionFor(session), userEmail));
+    }
+
     /**
      * Tạo đơn hàng (checkout)
      * POST /api/orders/checkout
@@ -48,13 +68,19 @@ public class OrderController {
     public ResponseEntity<Order> checkout(
             @RequestBody(required = false) Map<String, String> request,
             HttpSession session) {
-        String sessionId = session.getId();
+        String sessionId = cartService.cartSessionFor(session);
         String promoCode = (request != null) ? request.get("promoCode") : null;
         
         // Lấy email user nếu đã đăng nhập
         String userEmail = (String) session.getAttribute("userEmail");
         
-        Order order = orderService.createOrder(sessionId, userEmail, promoCode);
+        Order order;
+        try {
+            order = orderService.createOrder(sessionId, userEmail, promoCode);
+        } catch (IllegalStateException e) {
+            // Đơn chưa được lưu: không trả về như đã đặt thành công
+            return ResponseEntity.status(503).build();
+        }
         
         if (order == null) {
             return ResponseEntity.badRequest().build();
@@ -66,35 +92,46 @@ public class OrderController {
     /**
      * Lấy lịch sử đơn hàng (phân trang)
      * GET /api/orders/history?page=0&size=5
+     * Theo cursor: GET /api/orders/history?cursor=&size=5 (trang đầu), sau đó truyền nextCursor của trang trước
      */
     @GetMapping("/history")
 public ResponseEntity<Map<String, Object>> getOrderHistory(
         @RequestParam(defaultValue = "0") int page,
         @RequestParam(defaultValue = "5") int size,
+        @RequestParam(required = false) String cursor,
         HttpSession session) {
     
     String userEmail = (String) session.getAttribute("userEmail");
     String sessionId = session.getId();
-    
-    System.out.println("=== GET ORDER HISTORY ===");
-    System.out.println("Session ID: " + sessionId);
-    System.out.println("User Email from session: " + userEmail);
+
+    if (cursor != null) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            OrderHistoryPage historyPage = orderService.getOrderHistoryPage(sessionId, userEmail, cursor, size);
+            response.put("orders", historyPage.getOrders());
+            response.put("totalOrders", historyPage.getTotal());
+            response.put("pageSize", size);
+            response.put("nextCursor", historyPage.getNextCursor());
+        } catch (IllegalArgumentException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+        return ResponseEntity.ok(response);
+    }
     
     List<Order> orders;
     long totalOrders;
     
     // Luôn ưu tiên email, nếu không có email thì dùng sessionId
     if (userEmail != null && !userEmail.isEmpty()) {
-        System.out.println("Fetching by EMAIL: " + userEmail);
         orders = orderService.getOrderHistoryByEmail(userEmail, page, size);
         totalOrders = orderService.countOrdersByEmail(userEmail);
     } else {
-        System.out.println("Fetching by SESSION ID: " + sessionId);
         orders = orderService.getOrderHistory(sessionId, page, size);
         totalOrders = orderService.countOrders(sessionId);
     }
     
-    System.out.println("Found orders: " + orders.size() + ", Total: " + totalOrders);
+    log.debug("Order history: email={}, page={}, found={}, total={}", userEmail, page, orders.size(), totalOrders);
     
     int totalPages = (int) Math.ceil((double) totalOrders / size);
     
@@ -104,6 +141,9 @@ public ResponseEntity<Map<String, Object>> getOrderHistory(
     response.put("totalPages", totalPages);
     response.put("totalOrders", totalOrders);
     response.put("pageSize", size);
+    // Cho phép client cũ chuyển sang cursor từ bất kỳ trang nào
+    response.put("nextCursor", (long) (page + 1) * size < totalOrders && !orders.isEmpty()
+            ? OrderService.encodeCursor(orders.get(orders.size() - 1)) : null);
     
     return ResponseEntity.ok(response);
 }
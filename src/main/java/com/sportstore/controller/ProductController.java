@@ -1,51 +1,141 @@
 package com.sportstore.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.sportstore.model.Product;
+import com.sportstore.model.ProductFacets;
+import com.sportstore.model.ProductPage;
+import com.sportstore.model.ProductSummary;
+import com.sportstore.service.CatalogSnapshot;
 import com.sportstore.service.DataService;
+import com.sportstore.service.JsonCodec;
+import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/products")
 public class ProductController {
 
+    private static final String CATALOG_VERSION_HEADER = "X-Catalog-Version";
+
     @Autowired
     private DataService dataService;
 
+    @Autowired
+    private JsonCodec jsonCodec;
+
+    // Phân trang (tùy chọn) cho các API danh sách:
+    //   offset, limit       - cắt trang; không truyền thì trả về toàn bộ như trước
+    //   view=summary        - chỉ trả id, name, price, image, discountPercent
+    // Header trả về: X-Total-Count (tổng số kết quả), X-Next-Offset (offset trang sau, nếu còn)
+    //   và X-Catalog-Version (phiên bản catalog đã dùng để trả lời, có ở mọi API sản phẩm)
+    // Body luôn là một mảng JSON, được ghi dạng stream từng phần tử
+
     // API 1: Lấy toàn bộ danh sách (Dùng cho trang chủ, trang category)
-    // URL: http://localhost:8080/api/products
+    // URL: http://localhost:8080/api/products?offset=0&limit=12&view=summary
     @GetMapping
-    public List<Product> getAll() {
-        return dataService.getAllProducts();
+    public ResponseEntity<StreamingResponseBody> getAll(
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String view) {
+        return streamPage(dataService.getAllProducts(offset, limitOrAll(limit)), view);
     }
 
     // API 2: Lấy chi tiết 1 sản phẩm (Dùng cho trang Detail)
     // URL: http://localhost:8080/api/products/1
     @GetMapping("/{id}")
-    public Product getOne(@PathVariable int id) {
-        return dataService.getProductById(id);
+    public ResponseEntity<Product> getOne(@PathVariable int id) {
+        CatalogSnapshot catalog = dataService.getCatalog();
+        return ResponseEntity.ok()
+                .header(CATALOG_VERSION_HEADER, String.valueOf(catalog.getVersion()))
+                .body(catalog.getProduct(id));
     }
 
     // API 3: Tìm kiếm sản phẩm theo keyword
     // URL: http://localhost:8080/api/products/search?q=nike
     @GetMapping("/search")
-    public List<Product> search(@RequestParam String q) {
-        return dataService.searchProducts(q);
+    public ResponseEntity<StreamingResponseBody> search(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String view) {
+        return streamPage(dataService.searchProducts(q, offset, limitOrAll(limit)), view);
     }
 
     // API 4: Filter sản phẩm nâng cao (category group, size, color, price, sort, keyword)
     // Ví dụ: /api/products/filter?group=men&size=M&color=Đen&minPrice=500000&maxPrice=2000000&sort=price_asc&q=running
     @GetMapping("/filter")
-    public List<Product> filter(
+    public ResponseEntity<StreamingResponseBody> filter(
             @RequestParam(required = false) String group,
             @RequestParam(required = false) String size,
             @RequestParam(required = false) String color,
             @RequestParam(required = false) Double minPrice,
             @RequestParam(required = false) Double maxPrice,
             @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String q,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String view) {
+        ProductPage page = dataService.filterProductsPage(group, size, color, minPrice, maxPrice, sort, q,
+                offset, limitOrAll(limit));
+        return streamPage(page, view);
+    }
+
+    // API 5: Đếm facet (nhóm, size, màu) theo cùng bộ lọc, dùng cho sidebar trang category
+    // Ví dụ: /api/products/facets?group=men&minPrice=500000
+    @GetMapping("/facets")
+    public ResponseEntity<ProductFacets> facets(
+            @RequestParam(required = false) String group,
+            @RequestParam(required = false) String size,
+            @RequestParam(required = false) String color,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
             @RequestParam(required = false) String q) {
-        return dataService.filterProducts(group, size, color, minPrice, maxPrice, sort, q);
+        CatalogSnapshot catalog = dataService.getCatalog();
+        return ResponseEntity.ok()
+                .header(CATALOG_VERSION_HEADER, String.valueOf(catalog.getVersion()))
+                .body(catalog.facets(group, size, color, minPrice, maxPrice, q));
+    }
+
+    private static int limitOrAll(Integer limit) {
+        return limit != null ? limit : Integer.MAX_VALUE;
+    }
+
+    // Ghi trang kết quả thành mảng JSON, từng phần tử một, không dựng cả document trong bộ nhớ
+    private ResponseEntity<StreamingResponseBody> streamPage(ProductPage page, String view) {
+        boolean summary = "summary".equalsIgnoreCase(view);
+        ObjectWriter writer = jsonCodec.streamWriter();
+        // Body được ghi trên thread async của Spring: mang MDC (requestId) của request sang để log vẫn nối được
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        StreamingResponseBody body = out -> {
+            if (mdc != null) {
+                MDC.setContextMap(mdc);
+            }
+            try (JsonGenerator generator = jsonCodec.getMapper().getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartArray();
+                for (Product product : page.getItems()) {
+                    writer.writeValue(generator, summary ? new ProductSummary(product) : product);
+                }
+                generator.writeEndArray();
+            } finally {
+                MDC.clear();
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(CATALOG_VERSION_HEADER, String.valueOf(page.getCatalogVersion()))
+                .header("X-Total-Count", String.valueOf(page.getTotal()));
+        if (page.getNextOffset() >= 0) {
+            response.header("X-Next-Offset", String.valueOf(page.getNextOffset()));
+        }
+        return response.body(body);
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,7 @@ package com.sportstore.controller;
 
 import com.sportstore.model.User;
 import com.sportstore.service.AuthService;
+import com.sportstore.service.PasswordHasher;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -9,6 +10,8 @@ import org.springframework.web.bind.annotation.*;
 import jakarta.servlet.http.HttpSession;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * API Controller quản lý thông tin người dùng
@@ -89,8 +92,8 @@ public class UserController {
         User updatedUser = authService.getUserByEmail(userEmail);
         
         Map<String, Object> response = createResponse(true, "Cập nhật thông tin thành công");
-        updatedUser.setPassword(null);
-        response.put("user", updatedUser);
+        // Bản sao không có mật khẩu (không xóa password của object gốc, object đó còn được lưu file)
+        response.put("user", updatedUser.withoutPassword());
         
         return ResponseEntity.ok(response);
     }
@@ -101,41 +104,42 @@ public class UserController {
      * Body: { "currentPassword": "...", "newPassword": "..." }
      */
     @PutMapping("/change-password")
-    public ResponseEntity<Map<String, Object>> changePassword(
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> changePassword(
             @RequestBody Map<String, String> request,
             HttpSession session) {
         String userEmail = (String) session.getAttribute("userEmail");
         
         if (userEmail == null) {
-            return ResponseEntity.status(401).body(createResponse(false, "Chưa đăng nhập"));
+            return CompletableFuture.completedFuture(ResponseEntity.status(401).body(createResponse(false, "Chưa đăng nhập")));
         }
         
         String currentPassword = request.get("currentPassword");
         String newPassword = request.get("newPassword");
         
         if (currentPassword == null || newPassword == null) {
-            return ResponseEntity.badRequest().body(createResponse(false, "Thiếu thông tin"));
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(createResponse(false, "Thiếu thông tin")));
         }
         
         if (newPassword.length() < 6) {
-            return ResponseEntity.badRequest().body(createResponse(false, "Mật khẩu mới phải có ít nhất 6 ký tự"));
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(createResponse(false, "Mật khẩu mới phải có ít nhất 6 ký tự")));
         }
         
-        // Lấy user từ service (có đầy đủ thông tin bao gồm password)
         User user = authService.getUserByEmail(userEmail);
         if (user == null) {
-            return ResponseEntity.notFound().build();
+            return CompletableFuture.completedFuture(ResponseEntity.notFound().build());
         }
         
-        // Kiểm tra mật khẩu hiện tại (user từ authService có password đầy đủ)
-        if (user.getPassword() == null || !user.getPassword().equals(currentPassword)) {
-            return ResponseEntity.badRequest().body(createResponse(false, "Mật khẩu hiện tại không đúng"));
-        }
-        
-        // Đổi mật khẩu và lưu vào file
-        authService.changePassword(user.getId(), newPassword);
-        
-        return ResponseEntity.ok(createResponse(true, "Đổi mật khẩu thành công"));
+        // Kiểm tra mật khẩu hiện tại với hash đang lưu rồi băm mật khẩu mới (cả hai chạy trên pool băm, không giữ thread request)
+        return authService.changePassword(user.getId(), currentPassword, newPassword)
+                .thenApply(changed -> changed
+                        ? ResponseEntity.ok(createResponse(true, "Đổi mật khẩu thành công"))
+                        : ResponseEntity.badRequest().body(createResponse(false, "Mật khẩu hiện tại không đúng")))
+                .exceptionally(error -> {
+                    if (PasswordHasher.isOverloaded(error)) {
+                        return ResponseEntity.status(503).body(createResponse(false, "Hệ thống đang bận, vui lòng thử lại sau"));
+                    }
+                    throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+                });
     }
 
     private Map<String, Object> createResponse(boolean success, String message) {
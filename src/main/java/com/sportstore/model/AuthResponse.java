@@ -15,7 +15,8 @@ public class AuthResponse {
     public AuthResponse(boolean success, String message, User user) {
         this.success = success;
         this.message = message;
-        this.user = user;
+        // Không bao giờ trả hash mật khẩu ra client
+        this.user = user != null ? user.withoutPassword() : null;
     }
 
     public boolean isSuccess() {
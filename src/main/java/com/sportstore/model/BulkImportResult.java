@@ -0,0 +1,37 @@
+package com.sportstore.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kết quả import/upsert sản phẩm hàng loạt
+ */
+public class BulkImportResult {
+    private int received;          // Số sản phẩm đọc được từ request
+    private int inserted;          // Số sản phẩm thêm mới
+    private int updated;           // Số sản phẩm ghi đè theo id
+    private int rejected;          // Số sản phẩm không hợp lệ hoặc trùng id trong lô (bị bỏ qua)
+    private long catalogVersion;   // Phiên bản catalog sau khi import
+    private List<String> errors = new ArrayList<>(); // Lỗi theo vị trí trong request
+
+    public BulkImportResult() {}
+
+    // Getters và Setters
+    public int getReceived() { return received; }
+    public void setReceived(int received) { this.received = received; }
+
+    public int getInserted() { return inserted; }
+    public void setInserted(int inserted) { this.inserted = inserted; }
+
+    public int getUpdated() { return updated; }
+    public void setUpdated(int updated) { this.updated = updated; }
+
+    public int getRejected() { return rejected; }
+    public void setRejected(int rejected) { this.rejected = rejected; }
+
+    public long getCatalogVersion() { return catalogVersion; }
+    public void setCatalogVersion(long catalogVersion) { this.catalogVersion = catalogVersion; }
+
+    public List<String> getErrors() { return errors; }
+    public void setErrors(List<String> errors) { this.errors = errors; }
+}
@@ -23,28 +23,46 @@ public class CartResponse {
         calculateTotals();
     }
 
+    /**
+     * Dùng tổng đã tính sẵn (CartService giữ tổng chạy), không duyệt lại danh sách items
+     */
+    public CartResponse(List<CartItem> items, double subtotal, int itemCount) {
+        this.items = items;
+        this.itemCount = itemCount;
+        applySubtotal(subtotal);
+    }
+
     /**
      * Tính toán tất cả các giá trị (subtotal, shipping, tax, total)
      */
     private void calculateTotals() {
         // 1. Tính tạm tính (tổng giá tiền của tất cả items)
-        this.subtotal = items.stream()
+        double sum = items.stream()
                 .mapToDouble(CartItem::getSubtotal)
                 .sum();
 
-        // 2. Tính phí vận chuyển: Miễn phí nếu >= 200k, ngược lại 30k
-        this.shipping = this.subtotal >= 200000 ? 0.0 : 30000.0;
-
-        // 3. Hiện chưa áp dụng thuế
-        this.tax = 0.0;
-
-        // 4. Tính tổng cộng
-        this.total = this.subtotal + this.shipping;
-
-        // 5. Tính tổng số lượng items
+        // 2. Tính tổng số lượng items
         this.itemCount = items.stream()
                 .mapToInt(CartItem::getQuantity)
                 .sum();
+
+        applySubtotal(sum);
+    }
+
+    /**
+     * Phí vận chuyển, thuế và tổng cộng suy ra từ tạm tính
+     */
+    private void applySubtotal(double subtotal) {
+        this.subtotal = subtotal;
+
+        // Tính phí vận chuyển: Miễn phí nếu >= 200k, ngược lại 30k
+        this.shipping = subtotal >= 200000 ? 0.0 : 30000.0;
+
+        // Hiện chưa áp dụng thuế
+        this.tax = 0.0;
+
+        // Tính tổng cộng
+        this.total = subtotal + this.shipping;
     }
 
     // Getters và Setters
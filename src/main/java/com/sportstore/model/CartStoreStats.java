@@ -0,0 +1,70 @@
+package com.sportstore.model;
+
+/**
+ * Thống kê kho giỏ hàng trong bộ nhớ (dùng cho trang admin)
+ */
+public class CartStoreStats {
+    private int liveCarts;            // Số giỏ đang nằm trong bộ nhớ
+    private int maxCarts;             // Giới hạn số giỏ, vượt quá thì evict giỏ ít dùng nhất
+    private long ttlSeconds;          // Giỏ không được đụng tới quá thời gian này sẽ bị evict
+    private long estimatedBytes;      // Ước lượng bộ nhớ các giỏ đang chiếm
+    private long evictedIdle;         // Số giỏ bị evict vì quá TTL
+    private long evictedOverflow;     // Số giỏ bị evict vì vượt maxCarts
+    private long evictedSessionEnd;   // Số giỏ bị evict khi session hết hạn
+    private boolean diskEnabled;      // Có tầng lưu giỏ trên đĩa hay không
+    private boolean persistent;       // Ghi lại giỏ sau mỗi lần sửa (giữ được giỏ qua restart)
+    private long spilled;             // Số giỏ bị evict đã được đưa ra đĩa
+    private long written;             // Số lần ghi file giỏ
+    private int pendingWrites;        // Số thao tác file đang chờ ghi
+    private long restored;            // Số giỏ đã nạp lại từ đĩa
+    private int cartsOnDisk;          // Số file giỏ đang nằm trên đĩa
+    private long diskErrors;          // Số lần ghi/đọc file giỏ bị lỗi
+
+    public CartStoreStats() {}
+
+    // Getters và Setters
+    public int getLiveCarts() { return liveCarts; }
+    public void setLiveCarts(int liveCarts) { this.liveCarts = liveCarts; }
+
+    public int getMaxCarts() { return maxCarts; }
+    public void setMaxCarts(int maxCarts) { this.maxCarts = maxCarts; }
+
+    public long getTtlSeconds() { return ttlSeconds; }
+    public void setTtlSeconds(long ttlSeconds) { this.ttlSeconds = ttlSeconds; }
+
+    public long getEstimatedBytes() { return estimatedBytes; }
+    public void setEstimatedBytes(long estimatedBytes) { this.estimatedBytes = estimatedBytes; }
+
+    public long getEvictedIdle() { return evictedIdle; }
+    public void setEvictedIdle(long evictedIdle) { this.evictedIdle = evictedIdle; }
+
+    public long getEvictedOverflow() { return evictedOverflow; }
+    public void setEvictedOverflow(long evictedOverflow) { this.evictedOverflow = evictedOverflow; }
+
+    public long getEvictedSessionEnd() { return evictedSessionEnd; }
+    public void setEvictedSessionEnd(long evictedSessionEnd) { this.evictedSessionEnd = evictedSessionEnd; }
+
+    public boolean isDiskEnabled() { return diskEnabled; }
+    public void setDiskEnabled(boolean diskEnabled) { this.diskEnabled = diskEnabled; }
+
+    public boolean isPersistent() { return persistent; }
+    public void setPersistent(boolean persistent) { this.persistent = persistent; }
+
+    public long getSpilled() { return spilled; }
+    public void setSpilled(long spilled) { this.spilled = spilled; }
+
+    public long getWritten() { return written; }
+    public void setWritten(long written) { this.written = written; }
+
+    public int getPendingWrites() { return pendingWrites; }
+    public void setPendingWrites(int pendingWrites) { this.pendingWrites = pendingWrites; }
+
+    public long getRestored() { return restored; }
+    public void setRestored(long restored) { this.restored = restored; }
+
+    public int getCartsOnDisk() { return cartsOnDisk; }
+    public void setCartsOnDisk(int cartsOnDisk) { this.cartsOnDisk = cartsOnDisk; }
+
+    public long getDiskErrors() { return diskErrors; }
+    public void setDiskErrors(long diskErrors) { this.diskErrors = diskErrors; }
+}
@@ -0,0 +1,24 @@
+package com.sportstore.model;
+
+import java.util.List;
+
+/**
+ * Một trang lịch sử đơn hàng theo cursor (mới nhất trước)
+ */
+public class OrderHistoryPage {
+    private final List<Order> orders;
+    private final long total;        // Tổng số đơn của khách
+    private final String nextCursor; // Cursor để lấy trang kế tiếp, null nếu đã hết
+
+    public OrderHistoryPage(List<Order> orders, long total, String nextCursor) {
+        this.orders = orders;
+        this.total = total;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Order> getOrders() { return orders; }
+
+    public long getTotal() { return total; }
+
+    public String getNextCursor() { return nextCursor; }
+}
@@ -0,0 +1,46 @@
+package com.sportstore.model;
+
+/**
+ * Thống kê của một file được ghi kiểu write-behind (dùng cho trang admin)
+ */
+public class PersistenceStats {
+    private String name;          // Tên file (vd: products)
+    private String path;          // Đường dẫn file đích
+    private long submitted;       // Số lần có thay đổi cần lưu
+    private long written;         // Số lần thực sự ghi file
+    private long coalesced;       // Số lần thay đổi được gộp vào lần ghi sau (không ghi riêng)
+    private long lastLagMs;       // Độ trễ từ thay đổi đầu tiên đến khi ghi xong (lần gần nhất)
+    private long maxLagMs;        // Độ trễ lớn nhất từng ghi nhận
+    private boolean pending;      // Còn thay đổi chưa được ghi
+    private String lastError;     // Lỗi ghi gần nhất (null nếu không có)
+
+    public PersistenceStats() {}
+
+    // Getters và Setters
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+
+    public long getSubmitted() { return submitted; }
+    public void setSubmitted(long submitted) { this.submitted = submitted; }
+
+    public long getWritten() { return written; }
+    public void setWritten(long written) { this.written = written; }
+
+    public long getCoalesced() { return coalesced; }
+    public void setCoalesced(long coalesced) { this.coalesced = coalesced; }
+
+    public long getLastLagMs() { return lastLagMs; }
+    public void setLastLagMs(long lastLagMs) { this.lastLagMs = lastLagMs; }
+
+    public long getMaxLagMs() { return maxLagMs; }
+    public void setMaxLagMs(long maxLagMs) { this.maxLagMs = maxLagMs; }
+
+    public boolean isPending() { return pending; }
+    public void setPending(boolean pending) { this.pending = pending; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+}
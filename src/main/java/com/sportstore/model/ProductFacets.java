@@ -0,0 +1,38 @@
+package com.sportstore.model;
+
+import java.util.Map;
+
+/**
+ * Model đại diện cho số lượng sản phẩm theo từng facet (nhóm, size, màu)
+ * Dùng cho sidebar bộ lọc ở trang category
+ */
+public class ProductFacets {
+    private int total;                   // Tổng số sản phẩm khớp bộ lọc
+    private Map<String, Integer> groups; // men/women/accessories/shoes -> số sản phẩm
+    private Map<String, Integer> sizes;  // size -> số sản phẩm
+    private Map<String, Integer> colors; // màu -> số sản phẩm
+
+    // Constructor không tham số
+    public ProductFacets() {}
+
+    // Constructor đầy đủ
+    public ProductFacets(int total, Map<String, Integer> groups, Map<String, Integer> sizes, Map<String, Integer> colors) {
+        this.total = total;
+        this.groups = groups;
+        this.sizes = sizes;
+        this.colors = colors;
+    }
+
+    // Getters và Setters
+    public int getTotal() { return total; }
+    public void setTotal(int total) { this.total = total; }
+
+    public Map<String, Integer> getGroups() { return groups; }
+    public void setGroups(Map<String, Integer> groups) { this.groups = groups; }
+
+    public Map<String, Integer> getSizes() { return sizes; }
+    public void setSizes(Map<String, Integer> sizes) { this.sizes = sizes; }
+
+    public Map<String, Integer> getColors() { return colors; }
+    public void setColors(Map<String, Integer> colors) { this.colors = colors; }
+}
@@ -0,0 +1,36 @@
+package com.sportstore.model;
+
+import java.util.List;
+
+/**
+ * Một trang kết quả sản phẩm: danh sách đã cắt theo offset/limit + tổng số kết quả
+ */
+public class ProductPage {
+    private final List<Product> items;
+    private final int total;   // Tổng số sản phẩm khớp (trước khi cắt trang)
+    private final int offset;  // Vị trí bắt đầu của trang này
+    private final long catalogVersion; // Phiên bản catalog dùng để trả lời
+
+    public ProductPage(List<Product> items, int total, int offset, long catalogVersion) {
+        this.items = items;
+        this.total = total;
+        this.offset = offset;
+        this.catalogVersion = catalogVersion;
+    }
+
+    public List<Product> getItems() { return items; }
+
+    public int getTotal() { return total; }
+
+    public int getOffset() { return offset; }
+
+    public long getCatalogVersion() { return catalogVersion; }
+
+    /**
+     * Offset của trang kế tiếp, -1 nếu đã hết
+     */
+    public int getNextOffset() {
+        int next = offset + items.size();
+        return next < total ? next : -1;
+    }
+}
@@ -0,0 +1,41 @@
+package com.sportstore.model;
+
+/**
+ * Model rút gọn của sản phẩm cho trang danh sách (view=summary)
+ * Chỉ gồm các trường cần để vẽ thẻ sản phẩm, không có description/specs
+ */
+public class ProductSummary {
+    private int id;
+    private String name;
+    private Double price;
+    private String image;
+    private Integer discountPercent;
+
+    // Constructor không tham số
+    public ProductSummary() {}
+
+    // Tạo bản rút gọn từ Product
+    public ProductSummary(Product product) {
+        this.id = product.getId();
+        this.name = product.getName();
+        this.price = product.getPrice();
+        this.image = product.getImage();
+        this.discountPercent = product.getDiscountPercent();
+    }
+
+    // Getters và Setters
+    public int getId() { return id; }
+    public void setId(int id) { this.id = id; }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public Double getPrice() { return price; }
+    public void setPrice(Double price) { this.price = price; }
+
+    public String getImage() { return image; }
+    public void setImage(String image) { this.image = image; }
+
+    public Integer getDiscountPercent() { return discountPercent; }
+    public void setDiscountPercent(Integer discountPercent) { this.discountPercent = discountPercent; }
+}
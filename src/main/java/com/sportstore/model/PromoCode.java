@@ -1,11 +1,22 @@
 package com.sportstore.model;
 
+import java.util.List;
+
 public class PromoCode {
     private String code;
     private double discountPercent; // 0.15 = 15%
     private int maxUsesPerUser;
+    private int maxTotalUses; // Tổng số lượt dùng tối đa toàn shop (0 = không giới hạn)
     private String description;
 
+    // Điều kiện áp dụng
+    private Long validFrom;       // Thời điểm bắt đầu (epoch ms), null = không giới hạn
+    private Long validUntil;      // Thời điểm hết hạn (epoch ms), null = không giới hạn
+    private List<String> categories; // Chỉ áp dụng cho các category này (null/rỗng = mọi category)
+    private Double minSubtotal;   // Tạm tính tối thiểu của giỏ hàng
+    private boolean excludeDiscounted = true; // Bỏ qua sản phẩm đã được shop giảm giá
+    private boolean active = true;
+
     public PromoCode() {}
 
     public PromoCode(String code, double discountPercent, int maxUsesPerUser, String description) {
@@ -40,6 +51,14 @@ public class PromoCode {
         this.maxUsesPerUser = maxUsesPerUser;
     }
 
+    public int getMaxTotalUses() {
+        return maxTotalUses;
+    }
+
+    public void setMaxTotalUses(int maxTotalUses) {
+        this.maxTotalUses = maxTotalUses;
+    }
+
     public String getDescription() {
         return description;
     }
@@ -47,4 +66,52 @@ public class PromoCode {
     public void setDescription(String description) {
         this.description = description;
     }
+
+    public Long getValidFrom() {
+        return validFrom;
+    }
+
+    public void setValidFrom(Long validFrom) {
+        this.validFrom = validFrom;
+    }
+
+    public Long getValidUntil() {
+        return validUntil;
+    }
+
+    public void setValidUntil(Long validUntil) {
+        this.validUntil = validUntil;
+    }
+
+    public List<String> getCategories() {
+        return categories;
+    }
+
+    public void setCategories(List<String> categories) {
+        this.categories = categories;
+    }
+
+    public Double getMinSubtotal() {
+        return minSubtotal;
+    }
+
+    public void setMinSubtotal(Double minSubtotal) {
+        this.minSubtotal = minSubtotal;
+    }
+
+    public boolean isExcludeDiscounted() {
+        return excludeDiscounted;
+    }
+
+    public void setExcludeDiscounted(boolean excludeDiscounted) {
+        this.excludeDiscounted = excludeDiscounted;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void setActive(boolean active) {
+        this.active = active;
+    }
 }
@@ -1,6 +1,7 @@
 package com.sportstore.model;
 
 public class PromoCodeResponse {
+    private String code;
     private boolean valid;
     private String message;
     private double discountPercent;
@@ -15,6 +16,14 @@ public class PromoCodeResponse {
     }
 
     // Getters & Setters
+    public String getCode() {
+        return code;
+    }
+
+    public void setCode(String code) {
+        this.code = code;
+    }
+
     public boolean isValid() {
         return valid;
     }
@@ -0,0 +1,22 @@
+package com.sportstore.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Số lượt đã dùng mã giảm giá (nội dung file data/promo-usage.json)
+ */
+public class PromoUsage {
+    // Khách hàng ("user:<email>" hoặc "session:<id>") -> (mã -> số lần đã dùng)
+    private Map<String, Map<String, Integer>> perCustomer = new HashMap<>();
+    // Mã -> tổng số lần đã dùng
+    private Map<String, Integer> totals = new HashMap<>();
+
+    public PromoUsage() {}
+
+    public Map<String, Map<String, Integer>> getPerCustomer() { return perCustomer; }
+    public void setPerCustomer(Map<String, Map<String, Integer>> perCustomer) { this.perCustomer = perCustomer; }
+
+    public Map<String, Integer> getTotals() { return totals; }
+    public void setTotals(Map<String, Integer> totals) { this.totals = totals; }
+}
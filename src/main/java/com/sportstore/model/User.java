@@ -23,6 +23,22 @@ public class User {
         this.createdAt = System.currentTimeMillis();
     }
 
+    /**
+     * Bản sao không có mật khẩu, dùng khi trả user ra client (object gốc vẫn giữ hash để lưu file)
+     */
+    public User withoutPassword() {
+        User copy = new User();
+        copy.id = id;
+        copy.firstName = firstName;
+        copy.lastName = lastName;
+        copy.email = email;
+        copy.phone = phone;
+        copy.avatar = avatar;
+        copy.address = address;
+        copy.createdAt = createdAt;
+        return copy;
+    }
+
     // Getters & Setters
     public int getId() {
         return id;
@@ -1,9 +1,8 @@
 package com.sportstore.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.sportstore.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
@@ -12,20 +11,37 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Quản lý tài khoản người dùng
+ * - Mật khẩu chỉ lưu dạng hash PBKDF2 (xem PasswordHasher); băm/kiểm tra chạy trên pool băm riêng nên
+ *   register, login, changePassword trả về CompletableFuture, không giữ thread của request trong lúc băm
+ * - Tài khoản cũ còn lưu plaintext được băm lại ở lần đăng nhập đúng đầu tiên
+ * - Hai chỉ mục ConcurrentHashMap: theo id và theo email đã chuẩn hóa (trim + chữ thường);
+ *   tra cứu là O(1) và không khóa, email trùng (kể cả khác hoa/thường) không thể đăng ký hai lần
+ */
 @Service
 public class AuthService {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthService.class);
     
-    private Map<String, User> users = new HashMap<>();
+    private final Map<Integer, User> usersById = new ConcurrentHashMap<>();
+    // Khóa là normalizeEmail(email)
+    private final Map<String, User> usersByEmail = new ConcurrentHashMap<>();
+    // Bản ghi trong file không đưa được vào chỉ mục (email trống, trùng email hoặc trùng id với user khác):
+    // không đăng nhập được nhưng vẫn được ghi lại nguyên vẹn mỗi lần lưu file, chờ xử lý tay
+    private final List<User> unindexed = new ArrayList<>();
     private AtomicInteger userIdCounter = new AtomicInteger(1);
-    private final ObjectMapper objectMapper;
+    private final JsonCodec jsonCodec;
+    private final PasswordHasher passwordHasher;
     private final Path usersFilePath;
 
-    public AuthService() {
-        // Khởi tạo ObjectMapper với JavaTimeModule để xử lý LocalDateTime
-        this.objectMapper = new ObjectMapper();
-        this.objectMapper.registerModule(new JavaTimeModule());
+    public AuthService(JsonCodec jsonCodec, PasswordHasher passwordHasher) {
+        this.jsonCodec = jsonCodec;
+        this.passwordHasher = passwordHasher;
         
         // Đường dẫn file users.json
         this.usersFilePath = Paths.get("src/main/resources/data/users.json");
@@ -44,62 +60,80 @@ public class AuthService {
             
             List<User> userList;
             if (inputStream != null) {
-                userList = objectMapper.readValue(inputStream, new TypeReference<List<User>>() {});
+                userList = jsonCodec.userListReader().readValue(inputStream);
             } else if (Files.exists(usersFilePath)) {
                 // Nếu không tìm thấy trong classpath, đọc từ file system
-                userList = objectMapper.readValue(usersFilePath.toFile(), new TypeReference<List<User>>() {});
+                userList = jsonCodec.userListReader().readValue(usersFilePath.toFile());
             } else {
-                System.out.println("File users.json không tồn tại. Tạo danh sách rỗng.");
+                log.info("File users.json không tồn tại. Tạo danh sách rỗng.");
                 userList = new ArrayList<>();
             }
             
             // Load vào Map
             for (User user : userList) {
-                users.put(user.getEmail(), user);
                 if (user.getId() >= userIdCounter.get()) {
                     userIdCounter.set(user.getId() + 1);
                 }
+                // Chỉ đưa vào chỉ mục khi cả email lẫn id đều chưa có, để hai chỉ mục luôn chứa cùng một tập user
+                String emailKey = user.getEmail() != null ? normalizeEmail(user.getEmail()) : null;
+                if (emailKey == null || usersByEmail.containsKey(emailKey) || usersById.containsKey(user.getId())) {
+                    log.warn("User {} có email trống hoặc trùng email/id với user khác: giữ nguyên trong file nhưng không đăng nhập được",
+                            user.getId());
+                    unindexed.add(user);
+                    continue;
+                }
+                usersByEmail.put(emailKey, user);
+                usersById.put(user.getId(), user);
             }
             
-            System.out.println("✓ Đã load " + users.size() + " users từ file");
+            log.info("Đã load {} users từ file", usersById.size());
             
         } catch (IOException e) {
-            System.err.println("Lỗi đọc file users.json: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Lỗi đọc file users.json", e);
         }
     }
     
     /**
      * Lưu danh sách users vào file JSON
      */
-    private void saveUsersToFile() {
+    private synchronized void saveUsersToFile() {
         try {
             // Tạo thư mục nếu chưa tồn tại
             Files.createDirectories(usersFilePath.getParent());
             
             // Ghi file
-            objectMapper.writerWithDefaultPrettyPrinter()
-                    .writeValue(usersFilePath.toFile(), users.values());
+            List<User> all = new ArrayList<>(usersById.values());
+            all.addAll(unindexed);
+            jsonCodec.userListWriter().writeValue(usersFilePath.toFile(), all);
             
-            System.out.println("✓ Đã lưu " + users.size() + " users vào file");
+            log.debug("Đã lưu {} users vào file", usersById.size());
             
         } catch (IOException e) {
-            System.err.println("Lỗi ghi file users.json: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Lỗi ghi file users.json", e);
         }
     }
 
-    // Đăng ký
-    public User register(String firstName, String lastName, String email, String phone, String password) {
-        // Kiểm tra email đã tồn tại
-        if (users.containsKey(email)) {
-            return null; // Email đã được đăng ký
+    // Đăng ký: băm mật khẩu trên pool băm rồi mới thêm user
+    public CompletableFuture<User> register(String firstName, String lastName, String email, String phone, String password) {
+        // Kiểm tra email đã tồn tại (trước khi tốn công băm)
+        if (usersByEmail.containsKey(normalizeEmail(email))) {
+            return CompletableFuture.completedFuture(null); // Email đã được đăng ký
         }
 
+        return passwordHasher.hashAsync(password).thenApply(hash -> addUser(firstName, lastName, email, phone, hash));
+    }
+
+    private User addUser(String firstName, String lastName, String email, String phone, String passwordHash) {
         // Tạo user mới
-        User newUser = new User(firstName, lastName, email, phone, password);
+        User newUser = new User(firstName, lastName, email.trim(), phone, passwordHash);
         newUser.setId(userIdCounter.getAndIncrement());
-        users.put(email, newUser);
+
+        // putIfAbsent là điểm quyết định duy nhất: hai request đăng ký cùng email (cùng băm xong) thì chỉ một request thắng
+        // Chỉ mục id được thêm sau, khi email đã thuộc về user này; id mới chưa ai biết nên không ai thấy trạng thái dở dang
+        if (usersByEmail.putIfAbsent(normalizeEmail(email), newUser) != null) {
+            return null;
+        }
+        usersById.put(newUser.getId(), newUser);
 
         // Lưu vào file
         saveUsersToFile();
@@ -107,38 +141,49 @@ public class AuthService {
         return newUser;
     }
 
-    // Đăng nhập
-    public User login(String email, String password) {
-        User user = users.get(email);
+    // Đăng nhập: trả về user nếu đúng email + mật khẩu, null nếu sai
+    public CompletableFuture<User> login(String email, String password) {
+        User user = getUserByEmail(email);
+        // Email không tồn tại vẫn đi qua một lần băm giả, thời gian trả lời như khi sai mật khẩu
+        String stored = user != null ? user.getPassword() : null;
 
-        if (user == null) {
-            return null; // Email không tồn tại
-        }
+        return passwordHasher.verifyAsync(user != null ? user.getEmail() : email, password, stored).thenApply(result -> {
+            if (user == null || !result.matches()) {
+                return null;
+            }
+            if (result.upgradedHash() != null) {
+                upgradePassword(user, stored, result.upgradedHash());
+            }
+            return user;
+        });
+    }
 
-        // Kiểm tra password
-        if (!user.getPassword().equals(password)) {
-            return null; // Password sai
+    // Thay plaintext/hash cũ bằng hash mới, bỏ qua nếu mật khẩu vừa bị đổi bởi request khác
+    private synchronized void upgradePassword(User user, String oldValue, String newHash) {
+        if (Objects.equals(user.getPassword(), oldValue)) {
+            user.setPassword(newHash);
+            saveUsersToFile();
+            log.info("Đã chuyển mật khẩu của user {} sang PBKDF2", user.getId());
         }
-
-        return user;
     }
 
-    // Lấy user theo email
+    // Lấy user theo email (không phân biệt hoa/thường, bỏ khoảng trắng hai đầu)
     public User getUserByEmail(String email) {
-        return users.get(email);
+        return email != null ? usersByEmail.get(normalizeEmail(email)) : null;
     }
 
     // Lấy user theo ID
     public User getUserById(int id) {
-        return users.values().stream()
-                .filter(u -> u.getId() == id)
-                .findFirst()
-                .orElse(null);
+        return usersById.get(id);
     }
 
     // Lấy toàn bộ users (admin)
     public Collection<User> getAllUsers() {
-        return users.values();
+        return Collections.unmodifiableCollection(usersById.values());
+    }
+
+    private static String normalizeEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
     }
 
     // Cập nhật thông tin user
@@ -167,14 +212,27 @@ public class AuthService {
         return user;
     }
     
-    // Đổi mật khẩu
-    public boolean changePassword(int id, String newPassword) {
+    // Đổi mật khẩu: kiểm tra mật khẩu hiện tại rồi băm mật khẩu mới; false nếu không có user hoặc sai mật khẩu hiện tại
+    public CompletableFuture<Boolean> changePassword(int id, String currentPassword, String newPassword) {
         User user = getUserById(id);
-        if (user != null) {
-            user.setPassword(newPassword);
-            saveUsersToFile();
-            return true;
+        if (user == null) {
+            return CompletableFuture.completedFuture(false);
         }
-        return false;
+        String stored = user.getPassword();
+        return passwordHasher.verifyAsync(user.getEmail(), currentPassword, stored)
+                .thenCompose(result -> result.matches()
+                        ? passwordHasher.hashAsync(newPassword).thenApply(hash -> replacePassword(user, stored, hash))
+                        : CompletableFuture.completedFuture(false));
+    }
+
+    // Chỉ đổi nếu giá trị đang lưu vẫn là giá trị vừa kiểm tra: hai lần đổi cùng lúc với cùng mật khẩu hiện tại
+    // thì chỉ lần đầu thành công, lần sau trả false thay vì đè lên mật khẩu mới
+    private synchronized boolean replacePassword(User user, String verifiedValue, String newHash) {
+        if (!Objects.equals(user.getPassword(), verifiedValue)) {
+            return false;
+        }
+        user.setPassword(newHash);
+        saveUsersToFile();
+        return true;
     }
 }
@@ -0,0 +1,311 @@
+package com.sportstore.service;
+
+import com.sportstore.model.CartItem;
+import com.sportstore.model.CartResponse;
+import com.sportstore.model.Product;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Giỏ hàng của một session
+ * - Các dòng nằm trong LinkedHashMap theo CartLineKey: tìm/sửa/xóa một dòng là O(1), vẫn giữ thứ tự thêm vào
+ * - Mỗi dòng chỉ giữ khóa (id + biến thể), số lượng và thời điểm thêm; giá, % giảm, tên, ảnh luôn lấy từ catalog
+ * - Tạm tính được cộng dồn theo một version catalog (pricedVersion); catalog đổi version (admin sửa giá)
+ *   thì không cần duyệt mọi giỏ: giỏ nào bị đọc/sửa sau đó mới tự tính lại giá của riêng nó
+ * - Ghi: khóa riêng trên từng giỏ (update), các session khác nhau không bao giờ tranh chấp
+ * - Đọc: không khóa, chỉ đọc Snapshot bất biến được công bố qua biến volatile sau mỗi lần sửa
+ * - Giỏ đã bị gỡ khỏi store (checkout, xóa, rỗng, bị evict) bị đánh dấu discarded; lần sửa đến muộn phải thử lại với giỏ mới
+ * - lastAccess (volatile) cho CartStore biết giỏ nào đã bỏ quên để evict
+ */
+class Cart {
+
+    static final Snapshot EMPTY = new Snapshot(List.of(), 0, 0, -1);
+
+    // Chỉ truy cập khi giữ lock của giỏ
+    private final Map<CartLineKey, CartLine> lines = new LinkedHashMap<>();
+    private double subtotal;
+    private int totalQuantity;
+    private long pricedVersion = -1;  // Version catalog mà subtotal đang tính theo
+    private CatalogSnapshot catalog;  // Catalog của lần update đang chạy
+    private boolean discarded;
+
+    private volatile Snapshot snapshot = EMPTY;
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    /**
+     * Dựng lại giỏ từ snapshot đã lưu (file spill)
+     */
+    static Cart restore(Snapshot saved) {
+        Cart cart = new Cart();
+        for (CartLine line : saved.lines()) {
+            cart.lines.put(line.key(), line);
+        }
+        cart.subtotal = saved.subtotal();
+        cart.totalQuantity = saved.totalQuantity();
+        cart.pricedVersion = saved.catalogVersion();
+        cart.snapshot = saved;
+        return cart;
+    }
+
+    /**
+     * Đọc không khóa
+     */
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    // Chỉ ghi khi đã qua 1 giây, tránh mỗi lần đọc đều ghi vào biến volatile dùng chung
+    void touch() {
+        long now = System.currentTimeMillis();
+        if (now - lastAccess > 1000) {
+            lastAccess = now;
+        }
+    }
+
+    long lastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Áp dụng thay đổi dưới lock của giỏ rồi công bố snapshot mới
+     * Catalog được đọc bên trong lock: các lần update nối tiếp nhau luôn thấy version bằng hoặc mới hơn lần trước,
+     * request đọc catalog trước một lần import không thể tính lại giá giỏ về version cũ
+     * Nếu catalog đã đổi version từ lần tính trước thì tính lại giá cả giỏ trước
+     * @return snapshot sau khi sửa, hoặc null nếu giỏ đã bị gỡ khỏi store (người gọi lấy giỏ mới và thử lại)
+     */
+    synchronized Snapshot update(Supplier<CatalogSnapshot> latestCatalog, Consumer<Cart> change) {
+        if (discarded) {
+            return null;
+        }
+        CatalogSnapshot catalog = latestCatalog.get();
+        this.catalog = catalog;
+        if (pricedVersion != catalog.getVersion()) {
+            reprice();
+        }
+        change.accept(this);
+        this.catalog = null;
+        Snapshot next = lines.isEmpty() ? EMPTY
+                : new Snapshot(List.copyOf(lines.values()), subtotal, totalQuantity, pricedVersion);
+        snapshot = next;
+        if (lines.isEmpty()) {
+            discarded = true;
+        }
+        return next;
+    }
+
+    /**
+     * Đánh dấu giỏ đã bị gỡ (sau khi remove khỏi store) và trả về snapshot cuối cùng
+     * Chờ lần sửa đang chạy xong, nên snapshot trả về luôn đầy đủ
+     */
+    synchronized Snapshot discard() {
+        discarded = true;
+        return snapshot;
+    }
+
+    // ===== Các thao tác dưới đây chỉ được gọi bên trong update() =====
+
+    /**
+     * Thêm sản phẩm; nếu đã có dòng cùng khóa thì cộng dồn số lượng (sản phẩm không còn trong catalog thì bỏ qua)
+     */
+    void add(CartLineKey key, int quantity) {
+        if (catalog.getProduct(key.productId()) == null) {
+            return;
+        }
+        CartLine line = lines.get(key);
+        if (line != null) {
+            setQuantity(line, line.quantity() + quantity);
+            return;
+        }
+        line = new CartLine(key, System.currentTimeMillis(), quantity);
+        lines.put(key, line);
+        subtotal += subtotalOf(line);
+        totalQuantity += quantity;
+    }
+
+    /**
+     * Gộp các dòng của giỏ khác (giỏ khách vãng lai khi đăng nhập) vào giỏ này
+     * Trùng khóa thì cộng số lượng, khóa mới thì thêm vào cuối: O(số dòng của giỏ kia)
+     */
+    void merge(Snapshot other) {
+        for (CartLine line : other.lines()) {
+            CartLine existing = lines.get(line.key());
+            if (existing != null) {
+                setQuantity(existing, existing.quantity() + line.quantity());
+            } else if (catalog.getProduct(line.key().productId()) != null) {
+                lines.put(line.key(), line);
+                subtotal += subtotalOf(line);
+                totalQuantity += line.quantity();
+            }
+        }
+    }
+
+    /**
+     * Đổi số lượng một dòng; số lượng <= 0 thì xóa dòng
+     */
+    void updateQuantity(CartLineKey key, int newQuantity) {
+        CartLine line = lines.get(key);
+        if (line == null) {
+            return;
+        }
+        if (newQuantity > 0) {
+            setQuantity(line, newQuantity);
+        } else {
+            lines.remove(key);
+            subtract(line);
+        }
+    }
+
+    void remove(CartLineKey key) {
+        CartLine line = lines.remove(key);
+        if (line != null) {
+            subtract(line);
+        }
+    }
+
+    /**
+     * Client cũ không gửi color: đổi số lượng dòng đầu tiên khớp id + size (mọi màu)
+     */
+    void updateQuantityAnyColor(int productId, String size, int newQuantity) {
+        for (CartLineKey key : lines.keySet()) {
+            if (matches(key, productId, size)) {
+                updateQuantity(key, newQuantity);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Client cũ không gửi color: xóa mọi dòng khớp id + size
+     */
+    void removeAnyColor(int productId, String size) {
+        for (Iterator<CartLine> it = lines.values().iterator(); it.hasNext(); ) {
+            CartLine line = it.next();
+            if (matches(line.key(), productId, size)) {
+                it.remove();
+                subtract(line);
+            }
+        }
+    }
+
+    private static boolean matches(CartLineKey key, int productId, String size) {
+        return key.productId() == productId && Objects.equals(key.size(), size);
+    }
+
+    // CartLine bất biến: đổi số lượng là thay dòng mới, snapshot cũ không bị ảnh hưởng
+    private void setQuantity(CartLine line, int quantity) {
+        CartLine next = line.withQuantity(quantity);
+        lines.put(line.key(), next);
+        subtotal += subtotalOf(next) - subtotalOf(line);
+        totalQuantity += quantity - line.quantity();
+    }
+
+    /**
+     * Tính lại tạm tính theo catalog hiện tại; dòng có sản phẩm đã bị xóa khỏi catalog bị bỏ khỏi giỏ
+     */
+    private void reprice() {
+        subtotal = 0;
+        totalQuantity = 0;
+        for (Iterator<CartLine> it = lines.values().iterator(); it.hasNext(); ) {
+            CartLine line = it.next();
+            if (catalog.getProduct(line.key().productId()) == null) {
+                it.remove();
+                continue;
+            }
+            subtotal += subtotalOf(line);
+            totalQuantity += line.quantity();
+        }
+        pricedVersion = catalog.getVersion();
+    }
+
+    private double subtotalOf(CartLine line) {
+        return unitPrice(catalog.getProduct(line.key().productId())) * line.quantity();
+    }
+
+    private static double unitPrice(Product product) {
+        return product != null && product.getPrice() != null ? product.getPrice() : 0;
+    }
+
+    private void subtract(CartLine line) {
+        if (lines.isEmpty()) {
+            // Đưa về 0 tuyệt đối, tránh sai số double tích lũy sau nhiều lần cộng trừ
+            subtotal = 0;
+            totalQuantity = 0;
+            return;
+        }
+        subtotal -= subtotalOf(line);
+        totalQuantity -= line.quantity();
+    }
+
+    /**
+     * Một dòng trong giỏ (bất biến): chỉ khóa, thời điểm thêm và số lượng
+     */
+    record CartLine(CartLineKey key, long addedDate, int quantity) {
+
+        CartLine withQuantity(int newQuantity) {
+            return new CartLine(key, addedDate, newQuantity);
+        }
+    }
+
+    /**
+     * Trạng thái giỏ tại một thời điểm: danh sách dòng + tổng, không bao giờ bị sửa sau khi công bố
+     * subtotal/totalQuantity chỉ đúng với catalogVersion; catalog khác version thì toResponse tự tính lại
+     */
+    record Snapshot(List<CartLine> lines, double subtotal, int totalQuantity, long catalogVersion) {
+
+        // Ước lượng bộ nhớ (byte): Cart + map + snapshot cố định, mỗi dòng gồm entry + CartLine + CartLineKey + chuỗi
+        long estimatedBytes() {
+            long bytes = 256;
+            for (CartLine line : lines) {
+                bytes += 160 + stringBytes(line.key().size()) + stringBytes(line.key().color());
+            }
+            return bytes;
+        }
+
+        private static long stringBytes(String value) {
+            return value != null ? 40 + 2L * value.length() : 0;
+        }
+
+        /**
+         * Dựng response: giá và thông tin hiển thị lấy từ snapshot catalog truyền vào
+         * Sản phẩm đã bị xóa khỏi catalog không được hiển thị (và bị bỏ khỏi giỏ ở lần sửa tiếp theo)
+         */
+        CartResponse toResponse(CatalogSnapshot catalog) {
+            List<CartItem> items = new ArrayList<>(lines.size());
+            // Cùng version: dùng tổng đã cộng dồn sẵn; khác version thì cộng lại ngay trong vòng lặp dựng items
+            boolean current = catalogVersion == catalog.getVersion();
+            double pricedSubtotal = current ? subtotal : 0;
+            int pricedQuantity = current ? totalQuantity : 0;
+            for (CartLine line : lines) {
+                CartLineKey key = line.key();
+                Product product = catalog.getProduct(key.productId());
+                if (product == null) {
+                    continue;
+                }
+                CartItem item = new CartItem();
+                item.setId(key.productId());
+                item.setSize(key.size());
+                item.setColor(key.color());
+                item.setQuantity(line.quantity());
+                item.setPrice(unitPrice(product));
+                item.setDiscountPercent(product.getDiscountPercent());
+                item.setAddedDate(line.addedDate());
+                item.setName(product.getName());
+                item.setCategory(product.getCategory());
+                item.setImage(product.getImage());
+                items.add(item);
+                if (!current) {
+                    pricedSubtotal += unitPrice(product) * line.quantity();
+                    pricedQuantity += line.quantity();
+                }
+            }
+            return new CartResponse(items, pricedSubtotal, pricedQuantity);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.sportstore.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Định dạng nhị phân gọn cho một giỏ hàng (file spill)
+ * magic 'CART' | version | số dòng | mỗi dòng: productId, size, color, addedDate, quantity
+ * Chuỗi null ghi bằng cờ boolean. Không lưu giá: giá luôn lấy từ catalog khi nạp lại
+ * (version 1 có thêm price + discountPercent mỗi dòng, khi đọc thì bỏ qua)
+ */
+final class CartCodec {
+
+    private static final int MAGIC = 0x43415254;
+    private static final byte VERSION = 2;
+
+    private CartCodec() {}
+
+    /**
+     * Ghi ra file tạm rồi rename, file đích không bao giờ bị ghi dở
+     */
+    static void write(Path target, Cart.Snapshot snapshot) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(snapshot.lines().size());
+            for (Cart.CartLine line : snapshot.lines()) {
+                out.writeInt(line.key().productId());
+                writeNullable(out, line.key().size());
+                writeNullable(out, line.key().color());
+                out.writeLong(line.addedDate());
+                out.writeInt(line.quantity());
+            }
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static Cart.Snapshot read(Path source) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+            int magic = in.readInt();
+            byte version = in.readByte();
+            if (magic != MAGIC || version < 1 || version > VERSION) {
+                throw new IOException("File giỏ hàng không đúng định dạng: " + source);
+            }
+            int count = in.readInt();
+            List<Cart.CartLine> lines = new ArrayList<>(count);
+            int totalQuantity = 0;
+            for (int i = 0; i < count; i++) {
+                CartLineKey key = new CartLineKey(in.readInt(), readNullable(in), readNullable(in));
+                if (version == 1) {
+                    in.readDouble();
+                    in.readInt();
+                }
+                Cart.CartLine line = new Cart.CartLine(key, in.readLong(), in.readInt());
+                lines.add(line);
+                totalQuantity += line.quantity();
+            }
+            // catalogVersion -1: tạm tính được tính lại theo catalog hiện tại ở lần đọc/sửa đầu tiên
+            return new Cart.Snapshot(List.copyOf(lines), 0, totalQuantity, -1);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,45 @@
+package com.sportstore.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ánh xạ session -> user để mọi thiết bị của cùng một user dùng chung một giỏ
+ * - Session chưa đăng nhập: khóa giỏ chính là session id
+ * - Session đã đăng nhập: khóa giỏ là "user:<id>", giống nhau trên mọi thiết bị
+ * - Tra cứu là một lần get trên ConcurrentHashMap, không khóa
+ */
+@Component
+class CartIdentity {
+
+    private static final String USER_PREFIX = "user:";
+
+    private final Map<String, Integer> userBySession = new ConcurrentHashMap<>();
+
+    void bind(String sessionId, int userId) {
+        userBySession.put(sessionId, userId);
+    }
+
+    void unbind(String sessionId) {
+        userBySession.remove(sessionId);
+    }
+
+    boolean isBoundTo(String sessionId, int userId) {
+        Integer current = userBySession.get(sessionId);
+        return current != null && current == userId;
+    }
+
+    /**
+     * Khóa giỏ hàng của session: giỏ của user nếu đã đăng nhập, ngược lại giỏ riêng của session
+     */
+    String cartKey(String sessionId) {
+        Integer userId = userBySession.get(sessionId);
+        return userId != null ? userKey(userId) : sessionId;
+    }
+
+    static String userKey(int userId) {
+        return USER_PREFIX + userId;
+    }
+}
@@ -0,0 +1,16 @@
+package com.sportstore.service;
+
+/**
+ * Khóa của một dòng trong giỏ: sản phẩm + biến thể (size, màu)
+ * size/color rỗng được chuẩn hóa về null để "" và null là cùng một dòng
+ */
+record CartLineKey(int productId, String size, String color) {
+
+    static CartLineKey of(int productId, String size, String color) {
+        return new CartLineKey(productId, blankToNull(size), blankToNull(color));
+    }
+
+    private static String blankToNull(String value) {
+        return (value != null && value.trim().isEmpty()) ? null : value;
+    }
+}
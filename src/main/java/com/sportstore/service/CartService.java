@@ -2,152 +2,238 @@ package com.sportstore.service;
 
 import com.sportstore.model.CartItem;
 import com.sportstore.model.CartResponse;
+import com.sportstore.model.CartStoreStats;
+import jakarta.servlet.http.HttpSession;
 import org.springframework.stereotype.Service;
 
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Service quản lý giỏ hàng
- * Lưu trữ giỏ hàng trong session/memory (có thể mở rộng để lưu vào DB hoặc Redis)
+ * Lưu trữ giỏ hàng trong memory (CartStore, có thể kèm tầng đĩa); mọi API nhận session id,
+ * CartIdentity quyết định session đó dùng giỏ riêng hay giỏ chung của user
  */
 @Service
 public class CartService {
 
+    // Thuộc tính session: id của user mà session đã đăng nhập bằng mật khẩu (login/register); chỉ session có
+    // thuộc tính này mới được dùng giỏ hàng chung của user. sync-session (không kiểm tra mật khẩu) không đặt nó
+    public static final String AUTH_USER_ID = "authUserId";
+
+    /**
+     * Lưu trữ giỏ hàng theo session ID, có TTL + giới hạn số giỏ (xem CartStore)
+     */
+    private final CartStore cartStore;
+
     /**
-     * Lưu trữ giỏ hàng theo session ID (key: sessionId, value: danh sách CartItem)
-     * Trong thực tế, nên dùng Redis hoặc Database
+     * Session -> user: session đã đăng nhập dùng chung giỏ của user trên mọi thiết bị
      */
-    private Map<String, List<CartItem>> cartStorage = new ConcurrentHashMap<>();
+    private final CartIdentity identity;
+
+    private final DataService dataService;
+
+    public CartService(CartStore cartStore, CartIdentity identity, DataService dataService) {
+        this.cartStore = cartStore;
+        this.identity = identity;
+        this.dataService = dataService;
+    }
 
     /**
-     * Lấy giỏ hàng của một session
+     * Lấy giỏ hàng của một session (không khóa, đọc snapshot đã công bố)
      */
     public CartResponse getCart(String sessionId) {
-    List<CartItem> items = cartStorage.getOrDefault(sessionId, new ArrayList<>());
-    
-    // Tính subtotal
-    double subtotal = items.stream()
-        .mapToDouble(item -> item.getPrice() * item.getQuantity())
-        .sum();
-    
-    // Tính shipping (miễn phí nếu >= 200k)
-    double shipping = subtotal >= 200000 ? 0 : 30000;
-    
-    // Tính total (KHÔNG cộng thêm gì)
-    double total = subtotal + shipping;
-    
-    CartResponse response = new CartResponse();
-    response.setItems(items);
-    response.setSubtotal(subtotal);
-    response.setShipping(shipping);
-    response.setTotal(total);
-    
-    return response;
-}
+        return snapshotOf(sessionId).toResponse(dataService.getCatalog());
+    }
 
     /**
      * Thêm sản phẩm vào giỏ hàng
      * Nếu sản phẩm đã tồn tại (cùng id + size + color), tăng số lượng
+     * Chỉ dùng id, size, color, quantity từ client; giá, % giảm, tên, ảnh luôn lấy từ catalog khi đọc giỏ
+     * Sản phẩm không có trong catalog bị bỏ qua
      */
     public CartResponse addToCart(String sessionId, CartItem item) {
-        List<CartItem> cart = cartStorage.getOrDefault(sessionId, new ArrayList<>());
-
-        // Tìm xem có item cùng id, size và color không
-        Optional<CartItem> existingItem = cart.stream()
-                .filter(i -> i.getId() == item.getId() && 
-                           Objects.equals(i.getSize(), item.getSize()) &&
-                           Objects.equals(i.getColor(), item.getColor()))
-                .findFirst();
-
-        if (existingItem.isPresent()) {
-            // Nếu tồn tại, cộng thêm số lượng
-            existingItem.get().setQuantity(existingItem.get().getQuantity() + item.getQuantity());
-        } else {
-            // Nếu không, thêm item mới
-            item.setAddedDate(System.currentTimeMillis());
-            cart.add(item);
+        CatalogSnapshot catalog = dataService.getCatalog();
+        if (catalog.getProduct(item.getId()) == null) {
+            return snapshotOf(sessionId).toResponse(catalog);
         }
-
-        cartStorage.put(sessionId, cart);
-        return new CartResponse(cart);
+        CartLineKey key = CartLineKey.of(item.getId(), item.getSize(), item.getColor());
+        return mutate(sessionId, true, cart -> cart.add(key, item.getQuantity())).toResponse(dataService.getCatalog());
     }
 
     /**
      * Cập nhật số lượng item trong giỏ
+     * color == null (client không gửi): áp dụng cho dòng đầu tiên khớp id + size như trước đây
      */
-    public CartResponse updateQuantity(String sessionId, int productId, String size, int newQuantity) {
-        List<CartItem> cart = cartStorage.getOrDefault(sessionId, new ArrayList<>());
-        final String normalizedSize = (size != null && size.trim().isEmpty()) ? null : size;
-
-        for (Iterator<CartItem> it = cart.iterator(); it.hasNext(); ) {
-            CartItem item = it.next();
-            if (item.getId() == productId && 
-               (item.getSize() != null ? item.getSize().equals(normalizedSize) : normalizedSize == null)) {
-                if (newQuantity > 0) {
-                    item.setQuantity(newQuantity);
-                } else {
-                    // Nếu số lượng <= 0, xóa item
-                    it.remove();
-                }
-                break;
-            }
-        }
-
-        if (cart.isEmpty()) {
-            cartStorage.remove(sessionId);
+    public CartResponse updateQuantity(String sessionId, int productId, String size, String color, int newQuantity) {
+        Consumer<Cart> change;
+        if (color == null) {
+            String normalizedSize = normalizeSize(size);
+            change = cart -> cart.updateQuantityAnyColor(productId, normalizedSize, newQuantity);
         } else {
-            cartStorage.put(sessionId, cart);
+            CartLineKey key = CartLineKey.of(productId, size, color);
+            change = cart -> cart.updateQuantity(key, newQuantity);
         }
-
-        return new CartResponse(cart);
+        return mutate(sessionId, false, change).toResponse(dataService.getCatalog());
     }
 
     /**
      * Xóa 1 item khỏi giỏ
+     * color == null (client không gửi): xóa mọi dòng khớp id + size như trước đây
      */
-    public CartResponse removeFromCart(String sessionId, int productId, String size) {
-        List<CartItem> cart = cartStorage.getOrDefault(sessionId, new ArrayList<>());
-        final String normalizedSize = (size != null && size.trim().isEmpty()) ? null : size;
-
-        cart.removeIf(item -> item.getId() == productId && 
-                             (item.getSize() != null ? item.getSize().equals(normalizedSize) : normalizedSize == null));
-
-        if (cart.isEmpty()) {
-            cartStorage.remove(sessionId);
+    public CartResponse removeFromCart(String sessionId, int productId, String size, String color) {
+        Consumer<Cart> change;
+        if (color == null) {
+            String normalizedSize = normalizeSize(size);
+            change = cart -> cart.removeAnyColor(productId, normalizedSize);
         } else {
-            cartStorage.put(sessionId, cart);
+            CartLineKey key = CartLineKey.of(productId, size, color);
+            change = cart -> cart.remove(key);
         }
-
-        return new CartResponse(cart);
+        return mutate(sessionId, false, change).toResponse(dataService.getCatalog());
     }
 
     /**
      * Xóa toàn bộ giỏ hàng
      */
     public void clearCart(String sessionId) {
-        cartStorage.remove(sessionId);
+        take(sessionId);
     }
 
     /**
      * Lấy số lượng items trong giỏ
      */
     public int getCartItemCount(String sessionId) {
-        return cartStorage.getOrDefault(sessionId, new ArrayList<>()).size();
+        return snapshotOf(sessionId).lines().size();
     }
 
     /**
      * Lấy tổng số lượng sản phẩm (có tính quantity)
      */
     public int getCartTotalQuantity(String sessionId) {
-        List<CartItem> cart = cartStorage.getOrDefault(sessionId, new ArrayList<>());
-        return cart.stream().mapToInt(CartItem::getQuantity).sum();
+        return snapshotOf(sessionId).totalQuantity();
+    }
+
+    /**
+     * Checkout - lấy ra giỏ hàng và xóa nó trong cùng một bước
+     * Trả về snapshot duy nhất dùng cho cả tạo đơn, mã giảm giá và tổng tiền; giỏ rỗng nếu không có
+     */
+    public CartResponse checkout(String sessionId) {
+        return take(sessionId).toResponse(dataService.getCatalog());
     }
 
     /**
-     * Checkout - xóa giỏ hàng sau khi hoàn tất đơn hàng
+     * Session id dùng cho mọi API giỏ hàng của controller
+     * Session đã đăng nhập bằng mật khẩu được gắn với giỏ của user
+     * (cần khi session được khôi phục sau restart mà chưa đi qua login)
      */
-    public void checkout(String sessionId) {
-        cartStorage.remove(sessionId);
+    public String cartSessionFor(HttpSession session) {
+        Integer userId = (Integer) session.getAttribute(AUTH_USER_ID);
+        if (userId != null) {
+            bindUser(session.getId(), userId);
+        }
+        return session.getId();
+    }
+
+    /**
+     * Session vừa đăng nhập bằng mật khẩu (login/register): đánh dấu session rồi chuyển sang giỏ của user
+     */
+    public void loginSession(HttpSession session, int userId) {
+        session.setAttribute(AUTH_USER_ID, userId);
+        bindUser(session.getId(), userId);
+    }
+
+    /**
+     * Session vừa đăng nhập (login/register): từ giờ session dùng giỏ của user,
+     * giỏ khách vãng lai đang có của session được gộp từng dòng vào giỏ đó
+     * Gọi lại với cùng user là no-op (chỉ một lần tra map)
+     */
+    public void bindUser(String sessionId, int userId) {
+        if (identity.isBoundTo(sessionId, userId)) {
+            return;
+        }
+        identity.bind(sessionId, userId);
+        Cart guest = cartStore.remove(sessionId);
+        if (guest == null) {
+            return;
+        }
+        Cart.Snapshot guestLines = guest.discard();
+        if (!guestLines.lines().isEmpty()) {
+            String userKey = CartIdentity.userKey(userId);
+            mutate(() -> userKey, true, cart -> cart.merge(guestLines));
+        }
+    }
+
+    /**
+     * Session hết hạn hoặc đăng xuất: bỏ ánh xạ session -> user, gỡ giỏ khách vãng lai của session khỏi bộ nhớ
+     * (ghi ra đĩa nếu bật tầng đĩa); giỏ của user vẫn giữ cho các thiết bị khác
+     */
+    public void sessionExpired(String sessionId) {
+        identity.unbind(sessionId);
+        cartStore.expire(sessionId);
+    }
+
+    public CartStoreStats getStoreStats() {
+        return cartStore.getStats();
+    }
+
+    private Cart.Snapshot snapshotOf(String sessionId) {
+        Cart cart = cartStore.get(identity.cartKey(sessionId));
+        return cart != null ? cart.snapshot() : Cart.EMPTY;
+    }
+
+    /**
+     * Sửa giỏ dưới lock riêng của giỏ đó
+     * - Giỏ rỗng sau khi sửa được gỡ khỏi store
+     * - Gặp giỏ đã bị gỡ (checkout/xóa/gộp khi đăng nhập chen vào giữa) thì thử lại;
+     *   khóa giỏ được tính lại mỗi vòng vì session có thể vừa chuyển sang giỏ của user
+     */
+    private Cart.Snapshot mutate(String sessionId, boolean create, Consumer<Cart> change) {
+        Cart.Snapshot result = mutate(() -> identity.cartKey(sessionId), create, change);
+        String key = identity.cartKey(sessionId);
+        if (key.equals(sessionId)) {
+            return result;
+        }
+        // Session đã gắn với user: lần sửa vẫn có thể rơi vào giỏ khách vãng lai nếu nó tính khóa trước bindUser
+        // rồi tạo giỏ sau khi bindUser đã gộp và gỡ giỏ đó; giỏ mồ côi này được gộp nốt vào giỏ của user
+        Cart orphan = cartStore.remove(sessionId);
+        if (orphan == null) {
+            return result;
+        }
+        Cart.Snapshot orphanLines = orphan.discard();
+        if (orphanLines.lines().isEmpty()) {
+            return result;
+        }
+        return mutate(() -> key, true, cart -> cart.merge(orphanLines));
+    }
+
+    private Cart.Snapshot mutate(Supplier<String> keyOf, boolean create, Consumer<Cart> change) {
+        while (true) {
+            String key = keyOf.get();
+            Cart cart = create ? cartStore.getOrCreate(key) : cartStore.get(key);
+            if (cart == null) {
+                return Cart.EMPTY;
+            }
+            Cart.Snapshot result = cart.update(dataService::getCatalog, change);
+            if (result == null) {
+                cartStore.remove(key, cart);
+                continue;
+            }
+            if (result.lines().isEmpty()) {
+                cartStore.remove(key, cart);
+            } else {
+                cartStore.changed(key, cart);
+            }
+            return result;
+        }
+    }
+
+    private Cart.Snapshot take(String sessionId) {
+        Cart cart = cartStore.remove(identity.cartKey(sessionId));
+        return cart != null ? cart.discard() : Cart.EMPTY;
+    }
+
+    private static String normalizeSize(String size) {
+        return (size != null && size.trim().isEmpty()) ? null : size;
     }
 }
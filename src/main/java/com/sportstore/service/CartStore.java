@@ -0,0 +1,453 @@
+package com.sportstore.service;
+
+import com.sportstore.model.CartStoreStats;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Kho giỏ hàng trong bộ nhớ, có giới hạn, có thể kèm tầng lưu trên đĩa
+ * - Khóa giỏ do CartIdentity cấp: session id (khách vãng lai) hoặc "user:<id>" (đã đăng nhập)
+ * - TTL theo thời gian không dùng (mặc định bằng session timeout), một thread nền quét định kỳ
+ * - Session hết hạn thì giỏ khách vãng lai của session đó bị evict ngay (CartSessionListener gọi vào)
+ * - Vượt maxCarts thì evict các giỏ lâu không dùng nhất, chạy trên thread nền để request không phải chờ
+ * - Tầng đĩa (khi có store-dir): mỗi giỏ một file nhị phân gọn (CartCodec)
+ *   + spill: giỏ bị evict được ghi ra đĩa, nạp lại khi khóa đó được dùng lại
+ *   + persistent: mỗi lần sửa giỏ đều được ghi lại (gộp theo write-delay-ms), giỏ còn nguyên sau khi restart/crash
+ *   + Lúc khởi động chỉ đọc tên file; nội dung giỏ được nạp lười ở lần truy cập đầu tiên
+ *   + Mọi thao tác file chạy tuần tự trên thread "cart-store", mỗi khóa chỉ giữ thao tác mới nhất (ghi/xóa)
+ *   + File không được đụng tới quá store-retention thì bị xóa
+ *
+ * Cấu hình (application.properties):
+ *   sportstore.cart.ttl                  - thời gian không dùng trước khi evict (mặc định = server.servlet.session.timeout)
+ *   sportstore.cart.max-carts            - số giỏ tối đa trong bộ nhớ
+ *   sportstore.cart.sweep-interval-ms    - chu kỳ quét giỏ hết hạn
+ *   sportstore.cart.store-dir            - thư mục lưu giỏ trên đĩa (để trống = tắt tầng đĩa)
+ *   sportstore.cart.persistent           - ghi lại giỏ sau mỗi lần sửa (cần store-dir)
+ *   sportstore.cart.write-delay-ms       - thời gian gom các lần sửa trước khi ghi file
+ *   sportstore.cart.store-retention      - thời gian giữ file giỏ trên đĩa
+ */
+@Component
+class CartStore {
+
+    private static final Logger log = LoggerFactory.getLogger(CartStore.class);
+    private static final String FILE_SUFFIX = ".cart";
+    // Giá trị trong pendingOps: xóa file của giỏ (ngược lại là Cart cần ghi snapshot mới nhất)
+    private static final Object DELETE = new Object();
+
+    private final Map<String, Cart> carts = new ConcurrentHashMap<>();
+    // Các khóa giỏ đang có file trên đĩa (chỉ tên, không nạp nội dung)
+    private final Set<String> onDisk = ConcurrentHashMap.newKeySet();
+    // Thao tác file đang chờ, mỗi khóa một thao tác mới nhất; chỉ truy cập khi giữ lock của map
+    private final Map<String, Object> pendingOps = new LinkedHashMap<>();
+    // Các thao tác drain đã lấy ra và đang thực hiện (cùng lock với pendingOps); load() vẫn thấy chúng trong lúc ghi
+    private final Map<String, Object> inFlightOps = new LinkedHashMap<>();
+
+    private final long ttlMs;
+    private final int maxCarts;
+    private final Path storeDir;
+    private final boolean persistent;
+    private final long writeDelayMs;
+    private final long retentionMs;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean overflowScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    private final AtomicLong evictedIdle = new AtomicLong();
+    private final AtomicLong evictedOverflow = new AtomicLong();
+    private final AtomicLong evictedSessionEnd = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong restored = new AtomicLong();
+    private final AtomicLong diskErrors = new AtomicLong();
+
+    CartStore(@Value("${sportstore.cart.ttl:${server.servlet.session.timeout:30m}}") Duration ttl,
+              @Value("${sportstore.cart.max-carts:100000}") int maxCarts,
+              @Value("${sportstore.cart.sweep-interval-ms:60000}") long sweepIntervalMs,
+              @Value("${sportstore.cart.store-dir:}") String storeDir,
+              @Value("${sportstore.cart.persistent:false}") boolean persistent,
+              @Value("${sportstore.cart.write-delay-ms:200}") long writeDelayMs,
+              @Value("${sportstore.cart.store-retention:72h}") Duration retention) {
+        this.ttlMs = ttl.toMillis();
+        this.maxCarts = maxCarts;
+        this.storeDir = storeDir.isBlank() ? null : Paths.get(storeDir);
+        this.persistent = persistent && this.storeDir != null;
+        this.writeDelayMs = writeDelayMs;
+        this.retentionMs = retention.toMillis();
+        if (persistent && this.storeDir == null) {
+            log.warn("sportstore.cart.persistent=true nhưng chưa cấu hình sportstore.cart.store-dir, giỏ hàng chỉ nằm trong bộ nhớ");
+        }
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cart-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        loadDiskIndex();
+        executor.scheduleWithFixedDelay(this::sweep, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Giỏ theo khóa, null nếu không có (kể cả trên đĩa)
+     */
+    Cart get(String key) {
+        Cart cart = carts.get(key);
+        if (cart == null && onDisk.contains(key)) {
+            cart = carts.computeIfAbsent(key, this::load);
+        }
+        if (cart != null) {
+            cart.touch();
+        }
+        return cart;
+    }
+
+    Cart getOrCreate(String key) {
+        Cart cart = get(key);
+        if (cart != null) {
+            return cart;
+        }
+        // Kiểm tra lại tầng đĩa trong computeIfAbsent: giỏ có thể vừa bị evict sau lần get() ở trên
+        cart = carts.computeIfAbsent(key, id -> {
+            Cart stored = onDisk.contains(id) ? load(id) : null;
+            return stored != null ? stored : new Cart();
+        });
+        if (carts.size() > maxCarts && overflowScheduled.compareAndSet(false, true)) {
+            executor.execute(this::evictOverflow);
+        }
+        return cart;
+    }
+
+    /**
+     * Giỏ vừa được sửa: ở chế độ persistent thì hẹn ghi lại file của nó
+     */
+    void changed(String key, Cart cart) {
+        if (persistent) {
+            enqueue(key, cart);
+        }
+    }
+
+    /**
+     * Gỡ giỏ khỏi kho (checkout, xóa giỏ); file trên đĩa của giỏ cũng bị xóa
+     */
+    Cart remove(String key) {
+        // get() nạp lại giỏ đang nằm trên đĩa (nếu có) để checkout không bỏ sót
+        get(key);
+        Cart cart = carts.remove(key);
+        if (cart != null) {
+            enqueue(key, DELETE);
+        }
+        return cart;
+    }
+
+    /**
+     * Gỡ giỏ đã rỗng (hoặc đã bị discard) khỏi kho
+     */
+    boolean remove(String key, Cart cart) {
+        if (!carts.remove(key, cart)) {
+            return false;
+        }
+        enqueue(key, DELETE);
+        return true;
+    }
+
+    /**
+     * Session hết hạn: evict ngay thay vì chờ TTL
+     */
+    void expire(String key) {
+        Cart cart = carts.get(key);
+        if (cart != null && evict(key, cart)) {
+            evictedSessionEnd.incrementAndGet();
+        }
+    }
+
+    CartStoreStats getStats() {
+        long bytes = 0;
+        for (Cart cart : carts.values()) {
+            bytes += cart.snapshot().estimatedBytes();
+        }
+        int pending;
+        synchronized (pendingOps) {
+            pending = pendingOps.size();
+        }
+        CartStoreStats stats = new CartStoreStats();
+        stats.setLiveCarts(carts.size());
+        stats.setMaxCarts(maxCarts);
+        stats.setTtlSeconds(ttlMs / 1000);
+        stats.setEstimatedBytes(bytes);
+        stats.setEvictedIdle(evictedIdle.get());
+        stats.setEvictedOverflow(evictedOverflow.get());
+        stats.setEvictedSessionEnd(evictedSessionEnd.get());
+        stats.setDiskEnabled(storeDir != null);
+        stats.setPersistent(persistent);
+        stats.setSpilled(spilled.get());
+        stats.setWritten(written.get());
+        stats.setPendingWrites(pending);
+        stats.setRestored(restored.get());
+        stats.setCartsOnDisk(onDisk.size());
+        stats.setDiskErrors(diskErrors.get());
+        return stats;
+    }
+
+    /**
+     * Tắt server: ghi nốt các thao tác file còn chờ rồi mới dừng thread
+     */
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+        try {
+            // Chờ lần ghi đang hẹn chạy xong, tránh hai lần drain ghi cùng một file
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+    }
+
+    // ===== Evict =====
+
+    private void sweep() {
+        try {
+            long cutoff = System.currentTimeMillis() - ttlMs;
+            carts.forEach((key, cart) -> {
+                if (cart.lastAccess() < cutoff && evict(key, cart)) {
+                    evictedIdle.incrementAndGet();
+                }
+            });
+            purgeExpiredFiles();
+        } catch (RuntimeException e) {
+            log.error("Lỗi khi quét giỏ hàng hết hạn", e);
+        }
+    }
+
+    // Giảm về 90% maxCarts để không phải evict lại ngay sau vài giỏ mới
+    private void evictOverflow() {
+        try {
+            int excess = carts.size() - maxCarts * 9 / 10;
+            if (excess <= 0) {
+                return;
+            }
+            // Chụp lastAccess trước khi sort: giá trị có thể đổi trong lúc sort nếu đọc trực tiếp
+            List<Candidate> candidates = new ArrayList<>(carts.size());
+            carts.forEach((key, cart) -> candidates.add(new Candidate(key, cart, cart.lastAccess())));
+            candidates.sort(Comparator.comparingLong(Candidate::lastAccess));
+            int evicted = 0;
+            for (int i = 0; i < candidates.size() && evicted < excess; i++) {
+                if (evict(candidates.get(i).key(), candidates.get(i).cart())) {
+                    evicted++;
+                }
+            }
+            evictedOverflow.addAndGet(evicted);
+            log.info("Kho giỏ hàng vượt {} giỏ, đã evict {} giỏ ít dùng nhất", maxCarts, evicted);
+        } finally {
+            overflowScheduled.set(false);
+        }
+    }
+
+    /**
+     * Gỡ giỏ khỏi map trước rồi mới discard: lần sửa đến muộn thấy discarded và thử lại với giỏ khác
+     * Có tầng đĩa thì snapshot cuối cùng được ghi ra file (persistent thì file thường đã có, ghi lại cho chắc)
+     * Lệnh ghi được xếp trong cùng bước gỡ khỏi map (compute giữ lock của khóa): không có lúc nào giỏ vắng mặt
+     * ở cả map lẫn pendingOps/onDisk, nên get()/getOrCreate() không tạo giỏ rỗng đè lên giỏ vừa evict
+     */
+    private boolean evict(String key, Cart cart) {
+        boolean[] removed = new boolean[1];
+        carts.computeIfPresent(key, (k, current) -> {
+            if (current != cart) {
+                return current;
+            }
+            if (storeDir != null) {
+                // Cart trong pendingOps được đọc snapshot lúc ghi, nên vẫn lấy đủ các lần sửa trước discard
+                enqueue(key, cart);
+            }
+            removed[0] = true;
+            return null;
+        });
+        if (!removed[0]) {
+            return false;
+        }
+        Cart.Snapshot last = cart.discard();
+        if (storeDir != null && !last.lines().isEmpty()) {
+            spilled.incrementAndGet();
+        }
+        return true;
+    }
+
+    // ===== Tầng đĩa =====
+
+    private void enqueue(String key, Object op) {
+        if (storeDir == null) {
+            return;
+        }
+        synchronized (pendingOps) {
+            pendingOps.put(key, op);
+            if (op != DELETE) {
+                // Đánh dấu ngay khi xếp lệnh ghi, không đợi drain: giỏ vừa evict vẫn được get() tìm thấy
+                // (load() lấy giỏ từ pendingOps) thay vì tạo giỏ rỗng mới đè lên lệnh ghi đang chờ
+                onDisk.add(key);
+            }
+        }
+        if (!executor.isShutdown() && drainScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::drain, writeDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Thực hiện các thao tác file đang chờ (chỉ chạy trên thread cart-store, hoặc lúc tắt server)
+     * Ghi đọc snapshot mới nhất của giỏ tại thời điểm ghi nên nhiều lần sửa liên tiếp chỉ tốn một lần ghi
+     */
+    private void drain() {
+        drainScheduled.set(false);
+        Map<String, Object> ops;
+        synchronized (pendingOps) {
+            if (pendingOps.isEmpty()) {
+                return;
+            }
+            ops = new LinkedHashMap<>(pendingOps);
+            pendingOps.clear();
+            inFlightOps.putAll(ops);
+        }
+        ops.forEach((key, op) -> {
+            if (op == DELETE) {
+                deleteFile(key);
+            } else {
+                writeFile(key, ((Cart) op).snapshot());
+            }
+            synchronized (pendingOps) {
+                inFlightOps.remove(key);
+                // Lệnh ghi mới cho cùng khóa được xếp trong lúc xóa file: giữ đánh dấu để get() vẫn tìm thấy giỏ
+                if (pendingOps.get(key) instanceof Cart) {
+                    onDisk.add(key);
+                }
+            }
+        });
+    }
+
+    private void writeFile(String key, Cart.Snapshot snapshot) {
+        if (snapshot.lines().isEmpty()) {
+            deleteFile(key);
+            return;
+        }
+        try {
+            Files.createDirectories(storeDir);
+            CartCodec.write(pathOf(key), snapshot);
+            onDisk.add(key);
+            written.incrementAndGet();
+        } catch (IOException e) {
+            diskErrors.incrementAndGet();
+            log.warn("Không ghi được giỏ hàng ra đĩa", e);
+        }
+    }
+
+    private void deleteFile(String key) {
+        if (onDisk.remove(key)) {
+            try {
+                Files.deleteIfExists(pathOf(key));
+            } catch (IOException e) {
+                log.warn("Không xóa được file giỏ hàng", e);
+            }
+        }
+    }
+
+    /**
+     * Nạp lười giỏ từ đĩa; ở chế độ spill file được xóa sau khi nạp (giỏ đã quay lại bộ nhớ)
+     */
+    private Cart load(String key) {
+        // Còn thao tác chưa ghi xuống đĩa (vừa evict xong) thì nó mới hơn nội dung file
+        Object pending;
+        synchronized (pendingOps) {
+            pending = pendingOps.get(key);
+            if (pending == null) {
+                pending = inFlightOps.get(key);
+            }
+        }
+        if (pending == DELETE) {
+            return null;
+        }
+        if (pending instanceof Cart evicted) {
+            restored.incrementAndGet();
+            return Cart.restore(evicted.snapshot());
+        }
+        Path path = pathOf(key);
+        try {
+            Cart cart = Cart.restore(CartCodec.read(path));
+            restored.incrementAndGet();
+            if (!persistent) {
+                enqueue(key, DELETE);
+            }
+            return cart;
+        } catch (IOException e) {
+            diskErrors.incrementAndGet();
+            log.warn("Không đọc được giỏ hàng đã lưu {}", path, e);
+            enqueue(key, DELETE);
+            return null;
+        }
+    }
+
+    private void purgeExpiredFiles() {
+        if (storeDir == null || onDisk.isEmpty()) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        for (String key : onDisk) {
+            if (carts.containsKey(key)) {
+                continue;
+            }
+            try {
+                Path path = pathOf(key);
+                if (!Files.exists(path) || Files.getLastModifiedTime(path).toMillis() < cutoff) {
+                    enqueue(key, DELETE);
+                }
+            } catch (IOException e) {
+                log.warn("Không kiểm tra được file giỏ hàng", e);
+            }
+        }
+    }
+
+    // Chỉ đọc tên file, không đọc nội dung: khởi động không phụ thuộc số giỏ đang lưu
+    private void loadDiskIndex() {
+        if (storeDir == null || !Files.isDirectory(storeDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(storeDir, "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String encoded = name.substring(0, name.length() - FILE_SUFFIX.length());
+                onDisk.add(new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8));
+            }
+            log.info("Có {} giỏ hàng đã lưu trên đĩa ({})", onDisk.size(), storeDir);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Không đọc được thư mục giỏ hàng {}", storeDir, e);
+        }
+    }
+
+    private record Candidate(String key, Cart cart, long lastAccess) {}
+
+    // Khóa mã hóa base64url để luôn là tên file hợp lệ
+    private Path pathOf(String key) {
+        String encoded = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(key.getBytes(StandardCharsets.UTF_8));
+        return storeDir.resolve(encoded + FILE_SUFFIX);
+    }
+}
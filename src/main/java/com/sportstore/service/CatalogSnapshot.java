@@ -0,0 +1,197 @@
+package com.sportstore.service;
+
+import com.sportstore.model.Product;
+import com.sportstore.model.ProductFacets;
+import com.sportstore.model.ProductPage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Phiên bản bất biến của catalog: danh sách sản phẩm + toàn bộ chỉ mục dựng trên nó
+ * - Reader lấy một snapshot rồi đọc thoải mái, không cần lock
+ * - Writer dựng snapshot kế tiếp (version + 1) từ bản sao các chỉ mục rồi mới publish
+ * Mọi truy vấn trong một request nên dùng cùng một snapshot để kết quả nhất quán
+ */
+public final class CatalogSnapshot {
+
+    private final long version;
+    private final List<Product> products;
+    private final IntObjectMap<Product> productsById;
+    private final ProductSearchIndex searchIndex;
+    private final ProductFacetIndex facetIndex;
+    private final ProductSortIndex sortIndex;
+
+    private CatalogSnapshot(long version, List<Product> products, IntObjectMap<Product> productsById,
+                            ProductSearchIndex searchIndex, ProductFacetIndex facetIndex) {
+        this.version = version;
+        this.products = Collections.unmodifiableList(products);
+        this.productsById = productsById;
+        this.searchIndex = searchIndex;
+        this.facetIndex = facetIndex;
+        this.sortIndex = ProductSortIndex.build(products);
+    }
+
+    /**
+     * Dựng snapshot đầy đủ từ danh sách sản phẩm
+     */
+    public static CatalogSnapshot of(List<Product> products, long version) {
+        List<Product> list = new ArrayList<>(products);
+        IntObjectMap<Product> byId = new IntObjectMap<>(list.size());
+        for (Product p : list) {
+            byId.put(p.getId(), p);
+        }
+        return new CatalogSnapshot(version, list, byId,
+                ProductSearchIndex.build(list), ProductFacetIndex.build(list));
+    }
+
+    /**
+     * Snapshot kế tiếp có thêm (hoặc thay thế theo id) một sản phẩm
+     * Chỉ mục được cập nhật tăng dần trên bản sao, snapshot hiện tại không bị đụng tới
+     */
+    public CatalogSnapshot withProduct(Product product) {
+        List<Product> list = new ArrayList<>(products);
+        if (productsById.containsKey(product.getId())) {
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i).getId() == product.getId()) {
+                    list.set(i, product);
+                    break;
+                }
+            }
+        } else {
+            list.add(product);
+        }
+
+        IntObjectMap<Product> byId = productsById.copy();
+        byId.put(product.getId(), product);
+        ProductSearchIndex nextSearch = searchIndex.copy();
+        nextSearch.add(product);
+        ProductFacetIndex nextFacets = facetIndex.copy();
+        nextFacets.add(product);
+        return new CatalogSnapshot(version + 1, list, byId, nextSearch, nextFacets);
+    }
+
+    /**
+     * Snapshot kế tiếp không còn sản phẩm id (trả về chính nó nếu không có id này)
+     */
+    public CatalogSnapshot withoutProduct(int id) {
+        if (!productsById.containsKey(id)) {
+            return this;
+        }
+        List<Product> list = new ArrayList<>(products);
+        list.removeIf(p -> p.getId() == id);
+
+        IntObjectMap<Product> byId = productsById.copy();
+        byId.remove(id);
+        ProductSearchIndex nextSearch = searchIndex.copy();
+        nextSearch.remove(id);
+        ProductFacetIndex nextFacets = facetIndex.copy();
+        nextFacets.remove(id);
+        return new CatalogSnapshot(version + 1, list, byId, nextSearch, nextFacets);
+    }
+
+    /**
+     * Snapshot kế tiếp sau khi upsert cả lô sản phẩm (theo id)
+     * Sản phẩm đã có được thay tại chỗ, sản phẩm mới nối vào cuối
+     * Chỉ mục được dựng lại đúng một lần cho cả lô
+     */
+    public CatalogSnapshot withProducts(List<Product> batch) {
+        List<Product> list = new ArrayList<>(products);
+        IntObjectMap<Integer> positions = new IntObjectMap<>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            positions.put(list.get(i).getId(), i);
+        }
+        for (Product product : batch) {
+            Integer pos = positions.get(product.getId());
+            if (pos != null) {
+                list.set(pos, product);
+            } else {
+                positions.put(product.getId(), list.size());
+                list.add(product);
+            }
+        }
+        return of(list, version + 1);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Danh sách chỉ đọc
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    public int size() {
+        return products.size();
+    }
+
+    public Product getProduct(int id) {
+        return productsById.get(id);
+    }
+
+    public ProductPage page(int offset, int limit) {
+        int total = products.size();
+        int from = clamp(offset, total);
+        int to = (int) Math.min(total, (long) from + Math.max(limit, 0));
+        return new ProductPage(products.subList(from, to), total, from, version);
+    }
+
+    // Tìm trong tên sản phẩm hoặc category
+    public ProductPage search(String keyword, int offset, int limit) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return new ProductPage(new ArrayList<>(), 0, 0, version);
+        }
+
+        int[] ids = searchIndex.search(keyword, false);
+        int from = clamp(offset, ids.length);
+        int to = (int) Math.min(ids.length, (long) from + Math.max(limit, 0));
+        return new ProductPage(toProducts(Arrays.copyOfRange(ids, from, to)), ids.length, from, version);
+    }
+
+    // Lọc + sắp xếp + cắt trang: chỉ lấy đúng limit sản phẩm sau offset theo thứ tự dựng sẵn
+    public ProductPage filter(String group, String size, String color, Double minPrice, Double maxPrice,
+                              String sort, String keyword, int offset, int limit) {
+        BitSet matches = matchFilter(group, size, color, minPrice, maxPrice, keyword);
+        int total = matches.cardinality();
+        return new ProductPage(toProducts(sortIndex.select(matches, sort, offset, limit)), total,
+                clamp(offset, total), version);
+    }
+
+    // Đếm facet (nhóm, size, màu) cho cùng bộ lọc
+    public ProductFacets facets(String group, String size, String color, Double minPrice, Double maxPrice, String keyword) {
+        return facetIndex.count(matchFilter(group, size, color, minPrice, maxPrice, keyword));
+    }
+
+    // Tập id thỏa bộ lọc: AND các bitmap facet và kết quả keyword
+    private BitSet matchFilter(String group, String size, String color, Double minPrice, Double maxPrice, String keyword) {
+        BitSet matches = facetIndex.match(group, size, color, minPrice, maxPrice);
+        if (keyword != null && !keyword.trim().isEmpty()) {
+            BitSet keywordBits = new BitSet();
+            for (int id : searchIndex.search(keyword, true)) {
+                keywordBits.set(id);
+            }
+            matches.and(keywordBits);
+        }
+        return matches;
+    }
+
+    // Chuyển danh sách id thành danh sách sản phẩm (giữ thứ tự)
+    private List<Product> toProducts(int[] ids) {
+        List<Product> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Product p = productsById.get(id);
+            if (p != null) {
+                result.add(p);
+            }
+        }
+        return result;
+    }
+
+    private static int clamp(int offset, int total) {
+        return Math.min(Math.max(offset, 0), total);
+    }
+}
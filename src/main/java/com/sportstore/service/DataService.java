@@ -1,192 +1,225 @@
 package com.sportstore.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sportstore.model.BulkImportResult;
 import com.sportstore.model.Product;
+import com.sportstore.model.ProductFacets;
+import com.sportstore.model.ProductPage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.io.InputStream;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 
 @Service
 public class DataService {
 
-    private List<Product> products = new ArrayList<>();
+    private static final Logger log = LoggerFactory.getLogger(DataService.class);
+
+    // Catalog hiện tại: snapshot bất biến (danh sách + chỉ mục), đọc không cần lock
+    // Các hàm ghi (admin) được synchronized, dựng snapshot mới rồi đổi con trỏ
+    private final AtomicReference<CatalogSnapshot> catalog =
+            new AtomicReference<>(CatalogSnapshot.of(new ArrayList<>(), 0));
+
+    // Bộ đếm id cho sản phẩm mới (khởi tạo = max id + 1 khi load), không cần quét max mỗi lần thêm
+    private final AtomicInteger nextProductId = new AtomicInteger(1);
+
+    // File products.json được ghi nền, gộp nhiều thay đổi liên tiếp thành một lần ghi
+    private final WriteBehindFile productsFile;
 
     // Hàm này chạy ngay khi khởi động App để nạp dữ liệu
-    public DataService() {
+    public DataService(PersistenceService persistenceService, JsonCodec jsonCodec) {
+        this.productsFile = persistenceService.register("products",
+                Paths.get("src/main/resources/data/products.json"),
+                jsonCodec.productListWriter());
         try {
-            ObjectMapper mapper = new ObjectMapper();
             // Đọc file từ thư mục resources/data/products.json
             InputStream inputStream = getClass().getResourceAsStream("/data/products.json");
             
             if (inputStream == null) {
-                System.out.println("ERROR: Khong tim thay file products.json!");
+                log.error("Không tìm thấy file products.json!");
             } else {
                 // Chuyển đổi JSON thành List<Product>
-                products = mapper.readValue(inputStream, new TypeReference<List<Product>>(){});
-                System.out.println("DA LOAD THANH CONG " + products.size() + " SAN PHAM");
+                List<Product> products = jsonCodec.productListReader().readValue(inputStream);
+                catalog.set(CatalogSnapshot.of(products, 1));
+                products.forEach(p -> reserveId(p.getId()));
+                log.info("Đã load {} sản phẩm", products.size());
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Lỗi đọc file products.json", e);
         }
     }
 
-    // Lấy toàn bộ sản phẩm
+    // Snapshot catalog hiện tại (dùng khi cần nhiều truy vấn nhất quán hoặc cần biết version)
+    public CatalogSnapshot getCatalog() {
+        return catalog.get();
+    }
+
+    // Lấy toàn bộ sản phẩm (danh sách chỉ đọc)
     public List<Product> getAllProducts() {
-        return products;
+        return catalog.get().getProducts();
+    }
+
+    // Lấy một trang trong toàn bộ danh sách sản phẩm
+    public ProductPage getAllProducts(int offset, int limit) {
+        return catalog.get().page(offset, limit);
     }
 
     // Lấy sản phẩm theo ID (Dùng cho trang Chi tiết)
     public Product getProductById(int id) {
-        return products.stream()
-                .filter(p -> p.getId() == id)
-                .findFirst()
-                .orElse(null);
+        return catalog.get().getProduct(id);
     }
 
     // Tìm kiếm sản phẩm theo keyword
     // Tìm trong tên sản phẩm hoặc category
     public List<Product> searchProducts(String keyword) {
-        if (keyword == null || keyword.trim().isEmpty()) {
-            return new ArrayList<>();
-        }
-
-        String searchTerm = keyword.toLowerCase().trim();
+        return searchProducts(keyword, 0, Integer.MAX_VALUE).getItems();
+    }
 
-        return products.stream()
-                .filter(p -> p.getName().toLowerCase().contains(searchTerm) ||
-                           p.getCategory().toLowerCase().contains(searchTerm))
-                .toList();
+    // Tìm kiếm có phân trang: chỉ chuyển id -> Product cho đúng trang cần trả về
+    public ProductPage searchProducts(String keyword, int offset, int limit) {
+        return catalog.get().search(keyword, offset, limit);
     }
 
     // Lọc sản phẩm nâng cao
     public List<Product> filterProducts(String group, String size, String color, Double minPrice, Double maxPrice, String sort, String keyword) {
-        String groupLower = group != null ? group.toLowerCase() : null;
-        String sizeLower = size != null ? size.toLowerCase() : null;
-        String colorLower = color != null ? color.toLowerCase() : null;
-        String keywordLower = keyword != null ? keyword.toLowerCase() : null;
-
-        List<Product> filtered = products.stream()
-                .filter(p -> {
-                    // Group/category filter (men, women, accessories, shoes)
-                    if (groupLower != null && !groupLower.isEmpty()) {
-                        String cat = p.getCategory() != null ? p.getCategory().toLowerCase() : "";
-                        boolean matchGroup = false;
-                        if (groupLower.equals("men")) {
-                            matchGroup = cat.startsWith("men");
-                        } else if (groupLower.equals("women")) {
-                            matchGroup = cat.startsWith("women");
-                        } else if (groupLower.equals("accessories")) {
-                            matchGroup = cat.startsWith("accessories");
-                        } else if (groupLower.equals("shoes")) {
-                            matchGroup = cat.contains("shoes");
-                        }
-                        if (!matchGroup) return false;
-                    }
-
-                    // Size filter
-                    if (sizeLower != null && !sizeLower.isEmpty()) {
-                        if (p.getSizes() == null || p.getSizes().stream().noneMatch(s -> s != null && s.toLowerCase().equals(sizeLower))) {
-                            return false;
-                        }
-                    }
-
-                    // Color filter
-                    if (colorLower != null && !colorLower.isEmpty()) {
-                        if (p.getColors() == null || p.getColors().stream().noneMatch(c -> c != null && c.toLowerCase().contains(colorLower))) {
-                            return false;
-                        }
-                    }
-
-                    // Price range
-                    if (minPrice != null && p.getPrice() != null && p.getPrice() < minPrice) return false;
-                    if (maxPrice != null && p.getPrice() != null && p.getPrice() > maxPrice) return false;
-
-                    // Keyword search in name/category/description
-                    if (keywordLower != null && !keywordLower.isEmpty()) {
-                        String name = p.getName() != null ? p.getName().toLowerCase() : "";
-                        String cat = p.getCategory() != null ? p.getCategory().toLowerCase() : "";
-                        String desc = p.getDescription() != null ? p.getDescription().toLowerCase() : "";
-                        if (!(name.contains(keywordLower) || cat.contains(keywordLower) || desc.contains(keywordLower))) {
-                            return false;
-                        }
-                    }
-
-                    return true;
-                })
-                .toList();
-
-        // Sorting
-        if (sort != null) {
-            switch (sort) {
-                case "price_asc" -> filtered = filtered.stream()
-                        .sorted((a, b) -> Double.compare(a.getPrice(), b.getPrice()))
-                        .toList();
-                case "price_desc" -> filtered = filtered.stream()
-                        .sorted((a, b) -> Double.compare(b.getPrice(), a.getPrice()))
-                        .toList();
-                case "name_asc" -> filtered = filtered.stream()
-                        .sorted((a, b) -> a.getName().compareToIgnoreCase(b.getName()))
-                        .toList();
-                case "name_desc" -> filtered = filtered.stream()
-                        .sorted((a, b) -> b.getName().compareToIgnoreCase(a.getName()))
-                        .toList();
-                default -> {
-                }
-            }
-        }
+        return filterProducts(group, size, color, minPrice, maxPrice, sort, keyword, 0, Integer.MAX_VALUE);
+    }
+
+    // Lọc + sắp xếp + cắt trang: chỉ lấy đúng limit sản phẩm sau offset theo thứ tự dựng sẵn
+    public List<Product> filterProducts(String group, String size, String color, Double minPrice, Double maxPrice,
+                                        String sort, String keyword, int offset, int limit) {
+        return filterProductsPage(group, size, color, minPrice, maxPrice, sort, keyword, offset, limit).getItems();
+    }
+
+    // Như trên nhưng kèm tổng số kết quả để phân trang
+    public ProductPage filterProductsPage(String group, String size, String color, Double minPrice, Double maxPrice,
+                                          String sort, String keyword, int offset, int limit) {
+        return catalog.get().filter(group, size, color, minPrice, maxPrice, sort, keyword, offset, limit);
+    }
 
-        return filtered;
+    // Đếm facet (nhóm, size, màu) cho cùng bộ lọc, dùng cho sidebar trang category
+    public ProductFacets getFacets(String group, String size, String color, Double minPrice, Double maxPrice, String keyword) {
+        return catalog.get().facets(group, size, color, minPrice, maxPrice, keyword);
     }
 
     // === ADMIN CRUD METHODS ===
 
     // Thêm sản phẩm mới
-    public Product addProduct(Product product) {
-        // Tạo ID mới (lấy max ID hiện tại + 1)
-        int maxId = products.stream()
-                .mapToInt(Product::getId)
-                .max()
-                .orElse(0);
-        product.setId(maxId + 1);
-        products.add(product);
-        saveProductsToFile();
+    public synchronized Product addProduct(Product product) {
+        CatalogSnapshot current = catalog.get();
+        // Tạo ID mới từ bộ đếm
+        product.setId(nextProductId.getAndIncrement());
+        publish(current.withProduct(product));
         return product;
     }
 
     // Cập nhật sản phẩm
-    public Product updateProduct(int id, Product updatedProduct) {
-        for (int i = 0; i < products.size(); i++) {
-            if (products.get(i).getId() == id) {
-                updatedProduct.setId(id); // Giữ nguyên ID
-                products.set(i, updatedProduct);
-                saveProductsToFile();
-                return updatedProduct;
-            }
+    public synchronized Product updateProduct(int id, Product updatedProduct) {
+        CatalogSnapshot current = catalog.get();
+        if (current.getProduct(id) == null) {
+            return null;
         }
-        return null;
+        updatedProduct.setId(id); // Giữ nguyên ID
+        publish(current.withProduct(updatedProduct));
+        return updatedProduct;
     }
 
     // Xóa sản phẩm
-    public boolean deleteProduct(int id) {
-        boolean removed = products.removeIf(p -> p.getId() == id);
-        if (removed) {
-            saveProductsToFile();
+    public synchronized boolean deleteProduct(int id) {
+        CatalogSnapshot current = catalog.get();
+        CatalogSnapshot next = current.withoutProduct(id);
+        if (next == current) {
+            return false;
         }
-        return removed;
+        publish(next);
+        return true;
     }
 
-    // Lưu products vào file JSON
-    private void saveProductsToFile() {
-        try {
-            ObjectMapper mapper = new ObjectMapper();
-            java.io.File file = new java.io.File("src/main/resources/data/products.json");
-            mapper.writerWithDefaultPrettyPrinter().writeValue(file, products);
-            System.out.println("DA LUU " + products.size() + " SAN PHAM VAO FILE");
-        } catch (Exception e) {
-            e.printStackTrace();
+    // Import/upsert hàng loạt
+    // - Kiểm tra hợp lệ song song
+    // - Sản phẩm có id đã tồn tại thì ghi đè, còn lại luôn được cấp id mới như addProduct
+    //   (không giữ id do client gửi: id lớn tùy ý làm chỉ mục sắp xếp/facet cấp phát theo id bị phình hoặc tràn số)
+    // - Một id xuất hiện nhiều lần trong lô: chỉ nhận lần đầu, các lần sau bị từ chối (không đếm trùng inserted/updated)
+    // - Dựng lại chỉ mục và lưu file đúng một lần cho cả lô
+    public synchronized BulkImportResult bulkUpsert(List<Product> batch) {
+        BulkImportResult result = new BulkImportResult();
+        result.setReceived(batch.size());
+
+        String[] errors = new String[batch.size()];
+        IntStream.range(0, batch.size()).parallel()
+                .forEach(i -> errors[i] = validateProduct(batch.get(i)));
+
+        CatalogSnapshot current = catalog.get();
+        List<Product> accepted = new ArrayList<>(batch.size());
+        // id (> 0) -> vị trí đầu tiên trong lô
+        IntObjectMap<Integer> firstIndex = new IntObjectMap<>(batch.size());
+        int inserted = 0, updated = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (errors[i] != null) {
+                result.getErrors().add("#" + i + ": " + errors[i]);
+                continue;
+            }
+            Product product = batch.get(i);
+            if (product.getId() > 0) {
+                Integer first = firstIndex.get(product.getId());
+                if (first != null) {
+                    result.getErrors().add("#" + i + ": id " + product.getId() + " trùng với #" + first + " trong cùng lô");
+                    continue;
+                }
+                firstIndex.put(product.getId(), i);
+            }
+            if (product.getId() > 0 && current.getProduct(product.getId()) != null) {
+                updated++;
+            } else {
+                product.setId(nextProductId.getAndIncrement());
+                inserted++;
+            }
+            accepted.add(product);
+        }
+
+        result.setInserted(inserted);
+        result.setUpdated(updated);
+        result.setRejected(batch.size() - accepted.size());
+        if (!accepted.isEmpty()) {
+            publish(current.withProducts(accepted));
+        }
+        result.setCatalogVersion(catalog.get().getVersion());
+        return result;
+    }
+
+    // Trả về thông báo lỗi, hoặc null nếu sản phẩm hợp lệ
+    private static String validateProduct(Product product) {
+        if (product == null) {
+            return "Sản phẩm rỗng";
+        }
+        if (product.getName() == null || product.getName().trim().isEmpty()) {
+            return "Thiếu tên sản phẩm";
+        }
+        if (product.getPrice() == null || product.getPrice() < 0) {
+            return "Giá không hợp lệ";
+        }
+        if (product.getDiscountPercent() != null
+                && (product.getDiscountPercent() < 0 || product.getDiscountPercent() > 100)) {
+            return "discountPercent phải trong khoảng 0-100";
         }
+        return null;
+    }
+
+    // Đảm bảo bộ đếm id luôn lớn hơn id đã dùng
+    private void reserveId(int id) {
+        nextProductId.accumulateAndGet(id + 1, Math::max);
+    }
+
+    // Đổi sang snapshot mới rồi hẹn lưu file (chỉ gọi trong hàm synchronized)
+    // Danh sách trong snapshot là bất biến nên thread ghi nền đọc an toàn
+    private void publish(CatalogSnapshot next) {
+        catalog.set(next);
+        productsFile.submit(next.getProducts());
     }
-}
\ No newline at end of file
+}
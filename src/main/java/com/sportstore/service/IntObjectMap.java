@@ -0,0 +1,242 @@
+package com.sportstore.service;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Map khóa int -> object dùng open addressing (linear probing)
+ * Không boxing Integer, tra cứu O(1) và không cấp phát bộ nhớ khi get
+ * Không thread-safe: nơi sử dụng tự đảm bảo đồng bộ khi ghi
+ */
+public class IntObjectMap<V> {
+
+    private static final int EMPTY_KEY = 0;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    // Khóa 0 trùng với ô trống nên được lưu riêng
+    private boolean hasZeroKey;
+    private V zeroValue;
+
+    public IntObjectMap() {
+        this(16);
+    }
+
+    public IntObjectMap(int expectedSize) {
+        int capacity = tableSizeFor((int) Math.ceil(Math.max(expectedSize, 2) / LOAD_FACTOR));
+        allocate(capacity);
+    }
+
+    /**
+     * Bản sao độc lập (chỉ sao chép bảng băm, không sao chép các value)
+     */
+    public IntObjectMap<V> copy() {
+        IntObjectMap<V> copy = new IntObjectMap<>(2);
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.size = size;
+        copy.mask = mask;
+        copy.resizeThreshold = resizeThreshold;
+        copy.hasZeroKey = hasZeroKey;
+        copy.zeroValue = zeroValue;
+        return copy;
+    }
+
+    /**
+     * Lấy giá trị theo khóa, trả về null nếu không có
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key == EMPTY_KEY) {
+            return hasZeroKey ? zeroValue : null;
+        }
+        int[] k = keys;
+        int m = mask;
+        int slot = mix(key) & m;
+        while (true) {
+            int current = k[slot];
+            if (current == key) {
+                return (V) values[slot];
+            }
+            if (current == EMPTY_KEY) {
+                return null;
+            }
+            slot = (slot + 1) & m;
+        }
+    }
+
+    public boolean containsKey(int key) {
+        if (key == EMPTY_KEY) {
+            return hasZeroKey;
+        }
+        return findSlot(key) >= 0;
+    }
+
+    /**
+     * Thêm hoặc thay thế giá trị, trả về giá trị cũ (nếu có)
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (key == EMPTY_KEY) {
+            V previous = zeroValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+        int slot = mix(key) & mask;
+        while (true) {
+            int current = keys[slot];
+            if (current == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            if (current == EMPTY_KEY) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size > resizeThreshold) {
+                    rehash(keys.length << 1);
+                }
+                return null;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Xóa khóa, trả về giá trị đã xóa (nếu có)
+     * Dùng backward-shift để không cần tombstone
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (key == EMPTY_KEY) {
+            if (!hasZeroKey) {
+                return null;
+            }
+            V previous = zeroValue;
+            hasZeroKey = false;
+            zeroValue = null;
+            size--;
+            return previous;
+        }
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return null;
+        }
+        V previous = (V) values[slot];
+        shiftKeys(slot);
+        size--;
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY_KEY);
+        Arrays.fill(values, null);
+        hasZeroKey = false;
+        zeroValue = null;
+        size = 0;
+    }
+
+    /**
+     * Duyệt toàn bộ giá trị (thứ tự không xác định)
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        if (hasZeroKey) {
+            action.accept(zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY_KEY) {
+                action.accept((V) values[i]);
+            }
+        }
+    }
+
+    private int findSlot(int key) {
+        int slot = mix(key) & mask;
+        while (true) {
+            int current = keys[slot];
+            if (current == key) {
+                return slot;
+            }
+            if (current == EMPTY_KEY) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void shiftKeys(int slot) {
+        int last;
+        while (true) {
+            last = slot;
+            slot = (slot + 1) & mask;
+            while (true) {
+                int current = keys[slot];
+                if (current == EMPTY_KEY) {
+                    keys[last] = EMPTY_KEY;
+                    values[last] = null;
+                    return;
+                }
+                int home = mix(current) & mask;
+                // Chỉ dời phần tử nếu vị trí gốc của nó không nằm giữa (last, slot]
+                if (last <= slot ? (last >= home || home > slot) : (last >= home && home > slot)) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[last] = keys[slot];
+            values[last] = values[slot];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key != EMPTY_KEY) {
+                int slot = mix(key) & mask;
+                while (keys[slot] != EMPTY_KEY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int n) {
+        int capacity = Integer.highestOneBit(Math.max(n - 1, 1)) << 1;
+        return Math.max(capacity, 4);
+    }
+}
@@ -0,0 +1,146 @@
+package com.sportstore.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sportstore.model.Order;
+import com.sportstore.model.Product;
+import com.sportstore.model.PromoCode;
+import com.sportstore.model.PromoUsage;
+import com.sportstore.model.User;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bộ mã hóa JSON dùng chung cho toàn bộ app
+ * - Chỉ có một ObjectMapper (chính là mapper Spring dùng cho API), không service nào tự tạo mapper riêng
+ * - ObjectReader/ObjectWriter cho từng kiểu dữ liệu được tạo sẵn một lần và dùng lại (thread-safe)
+ * - Không pretty-print: file dữ liệu và response đều ghi dạng gọn
+ */
+@Component
+public class JsonCodec {
+
+    private static final TypeReference<List<Product>> PRODUCT_LIST = new TypeReference<>() {};
+    private static final TypeReference<List<Order>> ORDER_LIST = new TypeReference<>() {};
+    private static final TypeReference<List<User>> USER_LIST = new TypeReference<>() {};
+    // { "productId": { "userEmail": rating } }
+    private static final TypeReference<Map<String, Map<String, Integer>>> RATINGS = new TypeReference<>() {};
+    private static final TypeReference<List<PromoCode>> PROMO_CODE_LIST = new TypeReference<>() {};
+
+    private final ObjectMapper mapper;
+
+    private final ObjectReader productReader;
+    private final ObjectReader productListReader;
+    private final ObjectWriter productListWriter;
+    private final ObjectReader orderReader;
+    private final ObjectWriter orderWriter;
+    private final ObjectReader orderListReader;
+    private final ObjectWriter orderListWriter;
+    private final ObjectReader userListReader;
+    private final ObjectWriter userListWriter;
+    private final ObjectReader ratingsReader;
+    private final ObjectWriter ratingsWriter;
+    private final ObjectReader promoCodeListReader;
+    private final ObjectWriter promoCodeListWriter;
+    private final ObjectReader promoUsageReader;
+    private final ObjectWriter promoUsageWriter;
+    private final ObjectWriter streamWriter;
+
+    public JsonCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.productReader = mapper.readerFor(Product.class);
+        this.productListReader = mapper.readerFor(PRODUCT_LIST);
+        this.productListWriter = mapper.writerFor(PRODUCT_LIST).without(SerializationFeature.INDENT_OUTPUT);
+        this.orderReader = mapper.readerFor(Order.class);
+        this.orderWriter = mapper.writerFor(Order.class).without(SerializationFeature.INDENT_OUTPUT);
+        this.orderListReader = mapper.readerFor(ORDER_LIST);
+        this.orderListWriter = mapper.writerFor(ORDER_LIST).without(SerializationFeature.INDENT_OUTPUT);
+        this.userListReader = mapper.readerFor(USER_LIST);
+        this.userListWriter = mapper.writerFor(USER_LIST).without(SerializationFeature.INDENT_OUTPUT);
+        this.ratingsReader = mapper.readerFor(RATINGS);
+        this.ratingsWriter = mapper.writerFor(RATINGS).without(SerializationFeature.INDENT_OUTPUT);
+        this.promoCodeListReader = mapper.readerFor(PROMO_CODE_LIST);
+        this.promoCodeListWriter = mapper.writerFor(PROMO_CODE_LIST).without(SerializationFeature.INDENT_OUTPUT);
+        this.promoUsageReader = mapper.readerFor(PromoUsage.class);
+        this.promoUsageWriter = mapper.writerFor(PromoUsage.class).without(SerializationFeature.INDENT_OUTPUT);
+        // Ghi từng phần tử vào generator: không flush sau mỗi phần tử để servlet gom thành chunk lớn
+        this.streamWriter = mapper.writer()
+                .without(SerializationFeature.INDENT_OUTPUT)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    // Một sản phẩm (dùng với readValues để đọc mảng JSON hoặc NDJSON)
+    public ObjectReader productReader() {
+        return productReader;
+    }
+
+    public ObjectReader productListReader() {
+        return productListReader;
+    }
+
+    public ObjectWriter productListWriter() {
+        return productListWriter;
+    }
+
+    // Một đơn hàng (mỗi dòng của order journal)
+    public ObjectReader orderReader() {
+        return orderReader;
+    }
+
+    public ObjectWriter orderWriter() {
+        return orderWriter;
+    }
+
+    public ObjectReader orderListReader() {
+        return orderListReader;
+    }
+
+    public ObjectWriter orderListWriter() {
+        return orderListWriter;
+    }
+
+    public ObjectReader userListReader() {
+        return userListReader;
+    }
+
+    public ObjectWriter userListWriter() {
+        return userListWriter;
+    }
+
+    public ObjectReader ratingsReader() {
+        return ratingsReader;
+    }
+
+    public ObjectWriter ratingsWriter() {
+        return ratingsWriter;
+    }
+
+    public ObjectReader promoCodeListReader() {
+        return promoCodeListReader;
+    }
+
+    public ObjectWriter promoCodeListWriter() {
+        return promoCodeListWriter;
+    }
+
+    public ObjectReader promoUsageReader() {
+        return promoUsageReader;
+    }
+
+    public ObjectWriter promoUsageWriter() {
+        return promoUsageWriter;
+    }
+
+    // Writer cho response dạng stream
+    public ObjectWriter streamWriter() {
+        return streamWriter;
+    }
+}
@@ -0,0 +1,135 @@
+package com.sportstore.service;
+
+import com.sportstore.model.Order;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chỉ mục phụ cho lịch sử đơn hàng: khóa (sessionId hoặc email) -> danh sách đơn của khách đó
+ * - Mỗi danh sách luôn được giữ đúng thứ tự createdAt (trùng thì theo id), cập nhật khi thêm đơn
+ * - Lấy một trang chỉ là cắt mảng, đếm là O(1), không phải quét toàn bộ đơn hàng
+ * - Trang theo cursor (createdAt, id) tìm vị trí bằng binary search, không phụ thuộc trang sâu bao nhiêu
+ * - Đọc không cần lock: mỗi danh sách công bố một view (mảng, size) qua biến volatile
+ */
+public class OrderHistoryIndex {
+
+    // Thứ tự tăng dần; trang "mới nhất trước" được đọc từ cuối mảng
+    static final Comparator<Order> CHRONOLOGICAL =
+            Comparator.comparingLong(Order::getCreatedAt).thenComparingInt(Order::getId);
+
+    private final Map<String, OrderList> lists = new ConcurrentHashMap<>();
+
+    /**
+     * Thêm đơn vào danh sách của key (bỏ qua nếu key null)
+     */
+    public void add(String key, Order order) {
+        if (key == null) {
+            return;
+        }
+        lists.computeIfAbsent(key, k -> new OrderList()).add(order);
+    }
+
+    /**
+     * Một trang đơn hàng của key, mới nhất trước
+     */
+    public List<Order> page(String key, long offset, int limit) {
+        OrderList list = key != null ? lists.get(key) : null;
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return list.newestFirst(offset, limit);
+    }
+
+    /**
+     * Tối đa limit đơn cũ hơn mốc (createdAt, id), mới nhất trước
+     */
+    public List<Order> olderThan(String key, long createdAt, int id, int limit) {
+        OrderList list = key != null ? lists.get(key) : null;
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return list.olderThan(createdAt, id, limit);
+    }
+
+    public int count(String key) {
+        OrderList list = key != null ? lists.get(key) : null;
+        return list != null ? list.view.size() : 0;
+    }
+
+    private static final class OrderList {
+
+        private volatile View view = new View(new Order[2], 0);
+
+        // Đơn mới thường có createdAt lớn nhất nên chỉ việc nối vào cuối
+        synchronized void add(Order order) {
+            View current = view;
+            Order[] items = current.items();
+            int size = current.size();
+            int pos = size;
+            if (size > 0 && CHRONOLOGICAL.compare(items[size - 1], order) > 0) {
+                pos = Arrays.binarySearch(items, 0, size, order, CHRONOLOGICAL);
+                pos = pos >= 0 ? pos : -pos - 1;
+            }
+
+            if (pos == size && size < items.length) {
+                // Ghi vào ô chưa được công bố: reader của view cũ không nhìn thấy ô này
+                items[size] = order;
+                view = new View(items, size + 1);
+                return;
+            }
+            Order[] next = new Order[pos == size ? size << 1 : Math.max(items.length, size + 1)];
+            System.arraycopy(items, 0, next, 0, pos);
+            next[pos] = order;
+            System.arraycopy(items, pos, next, pos + 1, size - pos);
+            view = new View(next, size + 1);
+        }
+
+        List<Order> newestFirst(long offset, int limit) {
+            View current = view;
+            if (offset < 0 || offset >= current.size()) {
+                return Collections.emptyList();
+            }
+            return walkBack(current, current.size() - 1 - (int) offset, limit);
+        }
+
+        List<Order> olderThan(long createdAt, int id, int limit) {
+            View current = view;
+            Order[] items = current.items();
+            // Vị trí đầu tiên >= mốc; các phần tử trước đó đều cũ hơn mốc
+            int low = 0, high = current.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                Order order = items[mid];
+                int cmp = order.getCreatedAt() != createdAt
+                        ? Long.compare(order.getCreatedAt(), createdAt)
+                        : Integer.compare(order.getId(), id);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return walkBack(current, low - 1, limit);
+        }
+
+        private static List<Order> walkBack(View current, int from, int limit) {
+            if (limit <= 0 || from < 0) {
+                return Collections.emptyList();
+            }
+            int count = Math.min(limit, from + 1);
+            List<Order> result = new ArrayList<>(count);
+            for (int i = from; i > from - count; i--) {
+                result.add(current.items()[i]);
+            }
+            return result;
+        }
+    }
+
+    private record View(Order[] items, int size) {}
+}
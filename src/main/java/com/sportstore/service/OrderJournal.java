@@ -0,0 +1,411 @@
+package com.sportstore.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sportstore.model.Order;
+import com.sportstore.model.PersistenceStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lưu đơn hàng kiểu journal: snapshot (orders.json) + log chỉ nối thêm (orders.log, NDJSON)
+ * - Mỗi lần đặt hàng chỉ ghi thêm đúng một dòng, chi phí không phụ thuộc số đơn đã có
+ * - Group commit: các đơn được xếp hàng, một thread ghi gom mọi đơn đến trong khoảng groupCommitMs
+ *   thành một lần write + một lần fsync rồi mới báo hoàn tất cho tất cả (future)
+ * - Sau compactEvery dòng, log được xoay sang orders.log.1 và snapshot được ghi lại trên thread nền
+ * - Khởi động: đọc snapshot rồi phát lại orders.log.1 và orders.log (bản ghi sau đè bản ghi trước theo id)
+ * Tạo qua PersistenceService
+ */
+public class OrderJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderJournal.class);
+
+    private final Path snapshotPath;
+    private final Path logPath;
+    private final Path rotatedPath;
+    private final JsonCodec jsonCodec;
+    private final ObjectWriter lineWriter;
+    private final ObjectWriter snapshotWriter;
+    private final ScheduledExecutorService executor;
+    private final boolean fsync;
+    private final int compactEvery;
+    private final long groupCommitNanos;
+
+    // Hàng đợi các dòng chờ ghi và thread ghi duy nhất
+    private final LinkedBlockingQueue<PendingAppend> queue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    // running chỉ được tắt khi giữ appendLock: sau khi close() tắt cờ, không append nào còn vào được hàng đợi
+    private final Object appendLock = new Object();
+    private volatile boolean running = true;
+
+    // Nguồn dữ liệu để ghi snapshot khi compact: chỉ các đơn đã nạp lúc replay hoặc đã ghi xong vào log
+    // (đơn đang chờ hoặc ghi lỗi không bao giờ lọt vào snapshot); null khi chưa replay
+    private volatile Map<Integer, Order> committed;
+
+    // Các trường dưới đây được bảo vệ bởi lock của object
+    private FileChannel channel;
+    private boolean closed;
+    private int sinceCompaction;
+
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+
+    private final AtomicLong appended = new AtomicLong(0);
+    private final AtomicLong batches = new AtomicLong(0);
+    private volatile long lastLagMs;
+    private volatile long maxLagMs;
+    private volatile String lastError;
+
+    OrderJournal(Path snapshotPath, Path logPath, JsonCodec jsonCodec, ScheduledExecutorService executor,
+                 boolean fsync, int compactEvery, long groupCommitMs) {
+        this.snapshotPath = snapshotPath;
+        this.logPath = logPath;
+        this.rotatedPath = logPath.resolveSibling(logPath.getFileName() + ".1");
+        this.jsonCodec = jsonCodec;
+        this.lineWriter = jsonCodec.orderWriter();
+        // Không để Jackson tự đóng stream, vì còn cần fsync trước khi đóng
+        this.snapshotWriter = jsonCodec.orderListWriter().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.executor = executor;
+        this.fsync = fsync;
+        this.compactEvery = Math.max(compactEvery, 1);
+        this.groupCommitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(groupCommitMs, 0));
+        this.writerThread = new Thread(this::writerLoop, "order-journal");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Đã có dữ liệu journal trên đĩa hay chưa
+     */
+    public boolean exists() {
+        return Files.exists(snapshotPath) || Files.exists(logPath) || Files.exists(rotatedPath);
+    }
+
+    /**
+     * Đọc snapshot + phát lại log vào target, sau đó mở log để ghi tiếp
+     * @return số đơn hàng đã nạp
+     */
+    public synchronized int replay(Map<Integer, Order> target) throws IOException {
+        if (Files.exists(snapshotPath)) {
+            List<Order> snapshot = jsonCodec.orderListReader().readValue(snapshotPath.toFile());
+            snapshot.forEach(order -> target.put(order.getId(), order));
+        }
+        int replayed = replayLog(rotatedPath, target) + replayLog(logPath, target);
+        this.committed = new ConcurrentHashMap<>(target);
+
+        openLog();
+        if (replayed > 0) {
+            log.info("Đã phát lại {} đơn hàng từ order log", replayed);
+            scheduleCompaction();
+        }
+        return target.size();
+    }
+
+    /**
+     * Xếp đơn hàng vào hàng đợi ghi log
+     * Future hoàn tất khi dòng log đã được ghi (và fsync nếu bật); chỉ từ lúc đó đơn mới có trong snapshot khi compact
+     */
+    public CompletableFuture<Void> append(Order order) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        try {
+            // Serialize trên thread của request, thread ghi chỉ việc nối các byte lại
+            byte[] json = lineWriter.writeValueAsBytes(order);
+            byte[] line = Arrays.copyOf(json, json.length + 1);
+            line[json.length] = '\n';
+            synchronized (appendLock) {
+                if (!running) {
+                    throw new IOException("Order journal đã đóng");
+                }
+                queue.add(new PendingAppend(order, line, System.nanoTime(), done));
+            }
+        } catch (IOException e) {
+            done.completeExceptionally(e);
+        }
+        return done;
+    }
+
+    // Thread ghi: lấy một đơn, gom thêm các đơn đến trong cửa sổ group commit, ghi một lần
+    // Không dùng interrupt để dừng (FileChannel bị interrupt giữa lúc write/force sẽ tự đóng):
+    // close() tắt running, vòng lặp nhận ra sau tối đa một lần poll (100ms), ghi nốt hàng đợi rồi thoát
+    private void writerLoop() {
+        List<PendingAppend> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingAppend first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + groupCommitNanos;
+                while (true) {
+                    queue.drainTo(batch);
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || !running) {
+                        break;
+                    }
+                    PendingAppend next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                // Không ai interrupt thread này; nếu có thì dừng, các đơn còn lại bị báo lỗi bên dưới
+                failBatch(batch, new IOException("Thread ghi order log bị dừng"));
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        failPending(new IOException("Order journal đã đóng"));
+    }
+
+    // Báo lỗi cho mọi đơn còn trong hàng đợi, không để request nào chờ join() mãi mãi
+    private void failPending(IOException error) {
+        List<PendingAppend> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        failBatch(rest, error);
+    }
+
+    private void failBatch(List<PendingAppend> batch, Exception error) {
+        batch.forEach(pending -> pending.done().completeExceptionally(error));
+    }
+
+    private void writeBatch(List<PendingAppend> batch) {
+        ByteBuffer[] lines = new ByteBuffer[batch.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = ByteBuffer.wrap(batch.get(i).line());
+        }
+        try {
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("Order journal đã đóng");
+                }
+                if (channel == null) {
+                    openLog();
+                }
+                long remaining = 0;
+                for (ByteBuffer line : lines) {
+                    remaining += line.remaining();
+                }
+                while (remaining > 0) {
+                    remaining -= channel.write(lines);
+                }
+                if (fsync) {
+                    channel.force(false);
+                }
+                // Vẫn trong lock: compact xoay log sau thời điểm này thì đã thấy các đơn vừa ghi trong committed
+                if (committed != null) {
+                    batch.forEach(pending -> committed.put(pending.order().getId(), pending.order()));
+                }
+                sinceCompaction += batch.size();
+                if (sinceCompaction >= compactEvery) {
+                    scheduleCompaction();
+                }
+            }
+            appended.addAndGet(batch.size());
+            batches.incrementAndGet();
+            long lag = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batch.get(0).enqueuedAt());
+            lastLagMs = lag;
+            maxLagMs = Math.max(maxLagMs, lag);
+            lastError = null;
+            batch.forEach(pending -> pending.done().complete(null));
+        } catch (IOException | RuntimeException e) {
+            lastError = e.getMessage();
+            log.error("Lỗi ghi order log ({} đơn)", batch.size(), e);
+            failBatch(batch, e);
+        }
+    }
+
+    /**
+     * Ghi snapshot đầy đủ (ghi file tạm rồi rename nguyên tử)
+     */
+    public void writeSnapshot(Collection<Order> orders) throws IOException {
+        List<Order> sorted = new ArrayList<>(orders);
+        sorted.sort(Comparator.comparingInt(Order::getId));
+
+        Path parent = snapshotPath.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = parent.resolve(snapshotPath.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            snapshotWriter.writeValue(out, sorted);
+            if (fsync) {
+                out.getChannel().force(true);
+            }
+        }
+        try {
+            Files.move(temp, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Gộp log vào snapshot
+     * Chỉ giữ lock trong lúc xoay file log, phần ghi snapshot chạy không khóa
+     */
+    public void compact() {
+        try {
+            synchronized (this) {
+                if (channel == null) {
+                    return;
+                }
+                channel.close();
+                channel = null;
+                if (Files.exists(rotatedPath)) {
+                    // Lần compact trước bị lỗi: nối log hiện tại vào file đã xoay
+                    try (FileChannel rotated = FileChannel.open(rotatedPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                         FileChannel current = FileChannel.open(logPath, StandardOpenOption.READ)) {
+                        current.transferTo(0, current.size(), rotated);
+                        rotated.force(false);
+                    }
+                    Files.delete(logPath);
+                } else {
+                    Files.move(logPath, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+                }
+                openLog();
+            }
+
+            // Mọi dòng trong file đã xoay đều đã có trong committed, nên snapshot mới bao trùm nó
+            writeSnapshot(new ArrayList<>(committed.values()));
+            Files.deleteIfExists(rotatedPath);
+            log.info("Đã compact order log vào {}", snapshotPath.getFileName());
+        } catch (IOException e) {
+            log.error("Lỗi compact order log", e);
+            synchronized (this) {
+                if (channel == null) {
+                    try {
+                        openLog();
+                    } catch (IOException reopen) {
+                        log.error("Lỗi mở lại order log", reopen);
+                    }
+                }
+            }
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * Ghi nốt các đơn đang chờ rồi đóng log
+     * Đơn nào chưa ghi được sau thời gian chờ đều nhận lỗi (future completeExceptionally), không bị treo
+     */
+    public void close() {
+        synchronized (appendLock) {
+            running = false;
+        }
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            // Thread ghi quá chậm vẫn còn chạy: lô nó đang giữ sẽ lỗi thay vì mở lại log sau khi đã đóng
+            closed = true;
+        }
+        failPending(new IOException("Order journal đã đóng trước khi kịp ghi"));
+        synchronized (this) {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                log.error("Lỗi đóng order log", e);
+            }
+            channel = null;
+        }
+    }
+
+    public PersistenceStats getStats() {
+        PersistenceStats stats = new PersistenceStats();
+        stats.setName("orders-journal");
+        stats.setPath(logPath.toString());
+        stats.setSubmitted(appended.get() + queue.size());
+        stats.setWritten(batches.get());
+        stats.setCoalesced(appended.get() - batches.get());
+        stats.setLastLagMs(lastLagMs);
+        stats.setMaxLagMs(maxLagMs);
+        stats.setPending(!queue.isEmpty());
+        stats.setLastError(lastError);
+        return stats;
+    }
+
+    private void scheduleCompaction() {
+        sinceCompaction = 0;
+        if (committed != null && !executor.isShutdown() && compacting.compareAndSet(false, true)) {
+            executor.execute(this::compact);
+        }
+    }
+
+    private void openLog() throws IOException {
+        Files.createDirectories(logPath.toAbsolutePath().getParent());
+        channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        // Dòng cuối bị ghi dở (server tắt đột ngột): kết thúc nó để dòng mới không bị dính vào
+        long size = channel.size();
+        if (size > 0) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            try (FileChannel reader = FileChannel.open(logPath, StandardOpenOption.READ)) {
+                reader.read(last, size - 1);
+            }
+            if (last.get(0) != '\n') {
+                channel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+            }
+        }
+    }
+
+    private record PendingAppend(Order order, byte[] line, long enqueuedAt, CompletableFuture<Void> done) {}
+
+    // Phát lại một file log, bỏ qua dòng hỏng (thường là dòng cuối bị ghi dở)
+    private int replayLog(Path path, Map<Integer, Order> byId) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        ObjectReader reader = jsonCodec.orderReader();
+        int count = 0;
+        try (BufferedReader lines = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    Order order = reader.readValue(line);
+                    byId.put(order.getId(), order);
+                    count++;
+                } catch (IOException e) {
+                    log.warn("Bỏ qua dòng hỏng trong {}: {}", path.getFileName(), e.getMessage());
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -1,121 +1,122 @@
 package com.sportstore.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.sportstore.model.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 @Service
 public class OrderService {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderService.class);
     
     private final Map<Integer, Order> orders = new ConcurrentHashMap<>();
     private final AtomicInteger orderIdCounter = new AtomicInteger(1);
+
+    // Chỉ mục phụ cho lịch sử đơn hàng (theo sessionId và theo email)
+    private final OrderHistoryIndex ordersBySession = new OrderHistoryIndex();
+    private final OrderHistoryIndex ordersByEmail = new OrderHistoryIndex();
     
-    // Lưu trữ mã giảm giá
-    private final Map<String, PromoCode> promoCodes = new ConcurrentHashMap<>();
-    
-    // Lưu số lần sử dụng mã giảm giá: Map<sessionId, Map<promoCode, usageCount>>
-    private final Map<String, Map<String, Integer>> promoUsage = new ConcurrentHashMap<>();
     
     @Autowired
     private CartService cartService;
+
+    @Autowired
+    private PromoService promoService;
     
-    private final ObjectMapper objectMapper;
+    private final JsonCodec jsonCodec;
     private final Path ordersFilePath;
+
+    // Journal đơn hàng: data/orders.json (snapshot) + data/orders.log (mỗi đơn mới một dòng)
+    private final OrderJournal orderJournal;
     
-    public OrderService() {
-        // Khởi tạo ObjectMapper
-        this.objectMapper = new ObjectMapper();
-        this.objectMapper.registerModule(new JavaTimeModule());
+    public OrderService(JsonCodec jsonCodec, PersistenceService persistenceService,
+                        @Value("${sportstore.orders.compact-every:1000}") int compactEvery,
+                        @Value("${sportstore.orders.group-commit-ms:2}") long groupCommitMs) {
+        this.jsonCodec = jsonCodec;
         
         // Đường dẫn file orders.json
         this.ordersFilePath = Paths.get("data/orders.json");
-        
-        // Khởi tạo mã giảm giá APEX15
-        promoCodes.put("APEX15", new PromoCode("APEX15", 0.15, 3, "Giảm 15% cho sản phẩm chưa giảm giá"));
+        this.orderJournal = persistenceService.openJournal(ordersFilePath, Paths.get("data/orders.log"),
+                jsonCodec, compactEvery, groupCommitMs);
         
         // Load orders từ file
         loadOrdersFromFile();
     }
     
     /**
-     * Đọc danh sách orders từ file JSON
+     * Đọc danh sách orders: snapshot + phát lại order log
+     * Lần chạy đầu (chưa có journal) thì lấy dữ liệu cũ làm snapshot ban đầu
      */
     private void loadOrdersFromFile() {
         try {
-            List<Order> orderList;
-            Path legacyPath = Paths.get("src/main/resources/data/orders.json");
-            if (Files.exists(ordersFilePath)) {
-                orderList = objectMapper.readValue(ordersFilePath.toFile(), new TypeReference<List<Order>>() {});
-            } else if (Files.exists(legacyPath)) {
-                orderList = objectMapper.readValue(legacyPath.toFile(), new TypeReference<List<Order>>() {});
-                saveOrdersToFile(orderList);
-            } else {
-                InputStream inputStream = getClass().getResourceAsStream("/data/orders.json");
-                if (inputStream != null) {
-                    orderList = objectMapper.readValue(inputStream, new TypeReference<List<Order>>() {});
+            if (!orderJournal.exists()) {
+                List<Order> seed;
+                Path legacyPath = Paths.get("src/main/resources/data/orders.json");
+                if (Files.exists(legacyPath)) {
+                    seed = jsonCodec.orderListReader().readValue(legacyPath.toFile());
                 } else {
-                    System.out.println("File orders.json không tồn tại. Tạo danh sách rỗng.");
-                    orderList = new ArrayList<>();
+                    InputStream inputStream = getClass().getResourceAsStream("/data/orders.json");
+                    if (inputStream != null) {
+                        seed = jsonCodec.orderListReader().readValue(inputStream);
+                    } else {
+                        log.info("File orders.json không tồn tại. Tạo danh sách rỗng.");
+                        seed = new ArrayList<>();
+                    }
                 }
-                saveOrdersToFile(orderList);
+                orderJournal.writeSnapshot(seed);
             }
 
             // Load vào Map
-            for (Order order : orderList) {
-                orders.put(order.getId(), order);
+            orderJournal.replay(orders);
+            for (Order order : orders.values()) {
                 if (order.getId() >= orderIdCounter.get()) {
                     orderIdCounter.set(order.getId() + 1);
                 }
             }
 
-            System.out.println("✓ Đã load " + orders.size() + " orders từ file");
+            // Dựng chỉ mục theo đúng thứ tự thời gian để mỗi lần thêm chỉ là nối vào cuối
+            List<Order> chronological = new ArrayList<>(orders.values());
+            chronological.sort(OrderHistoryIndex.CHRONOLOGICAL);
+            chronological.forEach(this::indexOrder);
+
+            log.info("Đã load {} orders từ file", orders.size());
 
         } catch (IOException e) {
-            System.err.println("Lỗi đọc file orders.json: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Lỗi đọc file orders.json", e);
         }
     }
     
-    /**
-     * Lưu danh sách orders vào file JSON
-     */
-    private void saveOrdersToFile() {
-        saveOrdersToFile(null);
+    private void indexOrder(Order order) {
+        ordersBySession.add(order.getSessionId(), order);
+        ordersByEmail.add(order.getUserEmail(), order);
     }
 
-    private void saveOrdersToFile(List<Order> seedOrders) {
+    /**
+     * Ghi đơn hàng mới vào order log (một dòng, không ghi lại toàn bộ lịch sử)
+     * Chờ tới khi lần ghi chung (group commit) chứa đơn này hoàn tất
+     * @return false nếu ghi lỗi (đơn hàng chưa được lưu)
+     */
+    private boolean appendOrderToJournal(Order order) {
         try {
-            Files.createDirectories(ordersFilePath.getParent());
-
-            List<Order> snapshot;
-            if (seedOrders != null) {
-                snapshot = new ArrayList<>(seedOrders);
-            } else {
-                snapshot = new ArrayList<>(orders.values());
-            }
-            snapshot.sort(Comparator.comparingInt(Order::getId));
-
-            objectMapper.writerWithDefaultPrettyPrinter()
-                    .writeValue(ordersFilePath.toFile(), snapshot);
-
-            System.out.println("✓ Đã lưu " + snapshot.size() + " orders vào file");
-
-        } catch (IOException e) {
-            System.err.println("Lỗi ghi file orders.json: " + e.getMessage());
-            e.printStackTrace();
+            orderJournal.append(order).join();
+            return true;
+        } catch (CompletionException e) {
+            log.error("Lỗi ghi đơn hàng #{} vào order log", order.getId(), e.getCause());
+            return false;
         }
     }
 
@@ -123,95 +124,26 @@ public class OrderService {
     /**
      * Kiểm tra và áp dụng mã giảm giá
      */
-    public PromoCodeResponse validatePromoCode(String sessionId, String code) {
-        PromoCodeResponse response = new PromoCodeResponse();
-        
-        if (code == null || code.trim().isEmpty()) {
-            response.setValid(false);
-            response.setMessage("Vui lòng nhập mã giảm giá");
-            return response;
-        }
-        
-        code = code.trim().toUpperCase();
-        PromoCode promo = promoCodes.get(code);
-        
-        if (promo == null) {
-            response.setValid(false);
-            response.setMessage("Mã giảm giá không tồn tại");
-            return response;
-        }
-        
-        // Kiểm tra số lần sử dụng
-        int usedCount = getPromoUsageCount(sessionId, code);
-        int remaining = promo.getMaxUsesPerUser() - usedCount;
-        
-        if (remaining <= 0) {
-            response.setValid(false);
-            response.setMessage("Bạn đã sử dụng hết lượt giảm giá này");
-            return response;
-        }
-        
-        // Tính toán số tiền giảm
-        CartResponse cart = cartService.getCart(sessionId);
-        double discountAmount = calculateDiscountAmount(cart, promo);
-        
-        if (discountAmount == 0) {
-            response.setValid(false);
-            response.setMessage("Giỏ hàng không có sản phẩm áp dụng được mã này");
-            return response;
-        }
-        
-        response.setValid(true);
-        response.setMessage("Áp dụng mã thành công! Giảm " + (int)(promo.getDiscountPercent() * 100) + "%");
-        response.setDiscountPercent(promo.getDiscountPercent());
-        response.setRemainingUses(remaining);
-        response.setDiscountAmount(discountAmount);
-        
-        return response;
-    }
-    
-    /**
-     * Tính toán số tiền được giảm
-     * Chỉ áp dụng cho sản phẩm chưa có discountPercent
-     */
-    private double calculateDiscountAmount(CartResponse cart, PromoCode promo) {
-        if (cart.getItems() == null) return 0;
-        
-        double totalDiscount = 0;
-        for (CartItem item : cart.getItems()) {
-            // Chỉ áp dụng cho sản phẩm chưa được shop giảm giá
-            if (item.getDiscountPercent() == null || item.getDiscountPercent() == 0) {
-                double itemTotal = item.getPrice() * item.getQuantity();
-                totalDiscount += itemTotal * promo.getDiscountPercent();
-            }
-        }
-        
-        return totalDiscount;
-    }
-    
-    /**
-     * Lấy số lần đã sử dụng mã giảm giá
-     */
-    private int getPromoUsageCount(String sessionId, String code) {
-        Map<String, Integer> userUsage = promoUsage.get(sessionId);
-        if (userUsage == null) return 0;
-        return userUsage.getOrDefault(code, 0);
+    public PromoCodeResponse validatePromoCode(String sessionId, String userEmail, String code) {
+        return promoService.evaluate(PromoService.customerKey(sessionId, userEmail), code,
+                cartService.getCart(sessionId));
     }
-    
+
     /**
-     * Tăng số lần sử dụng mã giảm giá
+     * Các mã giảm giá áp dụng được cho giỏ hàng hiện tại
      */
-    private void incrementPromoUsage(String sessionId, String code) {
-        promoUsage.putIfAbsent(sessionId, new ConcurrentHashMap<>());
-        Map<String, Integer> userUsage = promoUsage.get(sessionId);
-        userUsage.put(code, userUsage.getOrDefault(code, 0) + 1);
+    public List<PromoCodeResponse> getApplicablePromoCodes(String sessionId, String userEmail) {
+        return promoService.applicable(PromoService.customerKey(sessionId, userEmail),
+                cartService.getCart(sessionId));
     }
     
     /**
      * Tạo đơn hàng từ giỏ hàng
+     * @throws IllegalStateException nếu không ghi được đơn vào order log (đơn không được tạo, giỏ được trả lại)
      */
     public Order createOrder(String sessionId, String userEmail, String promoCode) {
-        CartResponse cart = cartService.getCart(sessionId);
+        // Lấy giỏ và xóa luôn trong một bước: mọi tính toán bên dưới dùng chung snapshot này
+        CartResponse cart = cartService.checkout(sessionId);
         
         if (cart.isEmpty()) {
             return null;
@@ -228,81 +160,106 @@ public class OrderService {
         // Áp dụng mã giảm giá nếu có
         double discount = 0;
         if (promoCode != null && !promoCode.trim().isEmpty()) {
-            PromoCodeResponse promoResponse = validatePromoCode(sessionId, promoCode);
+            // Kiểm tra và giữ lượt dùng nguyên tử: nhiều checkout cùng lúc không thể vượt giới hạn
+            PromoCodeResponse promoResponse = promoService.redeem(
+                    PromoService.customerKey(sessionId, userEmail), promoCode, cart);
             if (promoResponse.isValid()) {
                 discount = promoResponse.getDiscountAmount();
-                order.setPromoCode(promoCode.trim().toUpperCase());
-                // Tăng số lần sử dụng
-                incrementPromoUsage(sessionId, promoCode.trim().toUpperCase());
+                order.setPromoCode(promoResponse.getCode());
             }
         }
         
         order.setDiscount(discount);
         order.setTotal(cart.getTotal() - discount);
         
-        // Lưu đơn hàng vào Map
+        // Lưu vào file; chỉ đưa vào Map và lịch sử khi đã ghi xong
+        // (compact lấy snapshot từ các đơn journal đã ghi, không từ Map này)
+        if (!appendOrderToJournal(order)) {
+            // Trả lượt dùng mã và các món về giỏ để khách đặt lại
+            if (order.getPromoCode() != null) {
+                promoService.release(PromoService.customerKey(sessionId, userEmail), order.getPromoCode());
+            }
+            cart.getItems().forEach(item -> cartService.addToCart(sessionId, item));
+            throw new IllegalStateException("Không lưu được đơn hàng, vui lòng thử lại");
+        }
         orders.put(order.getId(), order);
-        
-        // Lưu vào file
-        saveOrdersToFile();
-        
-        // Xóa giỏ hàng sau khi đặt
-        cartService.clearCart(sessionId);
+        indexOrder(order);
         
         return order;
     }
     
     /**
-     * Lấy lịch sử đơn hàng theo sessionId (phân trang)
+     * Lấy lịch sử đơn hàng theo sessionId (phân trang, mới nhất trước)
      */
     public List<Order> getOrderHistory(String sessionId, int page, int pageSize) {
-        return orders.values().stream()
-                .filter(order -> order.getSessionId().equals(sessionId))
-                .sorted((o1, o2) -> Long.compare(o2.getCreatedAt(), o1.getCreatedAt())) // Mới nhất trước
-                .skip((long) page * pageSize)
-                .limit(pageSize)
-                .collect(Collectors.toList());
+        return ordersBySession.page(sessionId, (long) page * pageSize, pageSize);
     }
     
     /**
-     * Lấy lịch sử đơn hàng theo userEmail (phân trang)
+     * Lấy lịch sử đơn hàng theo userEmail (phân trang, mới nhất trước)
      */
     public List<Order> getOrderHistoryByEmail(String userEmail, int page, int pageSize) {
-        System.out.println("OrderService: Looking for orders with email: " + userEmail);
-        System.out.println("OrderService: Total orders in memory: " + orders.size());
-        
-        // Debug: liệt kê tất cả orders
-        orders.values().forEach(o -> {
-            System.out.println("  - Order #" + o.getId() + " | email: " + o.getUserEmail() + " | sessionId: " + o.getSessionId());
-        });
-        
-        List<Order> result = orders.values().stream()
-                .filter(order -> userEmail.equals(order.getUserEmail()))
-                .sorted((o1, o2) -> Long.compare(o2.getCreatedAt(), o1.getCreatedAt())) // Mới nhất trước
-                .skip((long) page * pageSize)
-                .limit(pageSize)
-                .collect(Collectors.toList());
-        
-        System.out.println("OrderService: Found " + result.size() + " orders for email: " + userEmail);
-        return result;
+        return ordersByEmail.page(userEmail, (long) page * pageSize, pageSize);
+    }
+    
+    /**
+     * Lịch sử đơn hàng theo cursor (keyset), mới nhất trước
+     * Dùng email nếu có, không thì dùng sessionId; cursor null hoặc rỗng là trang đầu
+     * @throws IllegalArgumentException nếu cursor không hợp lệ
+     */
+    public OrderHistoryPage getOrderHistoryPage(String sessionId, String userEmail, String cursor, int pageSize) {
+        boolean byEmail = userEmail != null && !userEmail.isEmpty();
+        OrderHistoryIndex index = byEmail ? ordersByEmail : ordersBySession;
+        String key = byEmail ? userEmail : sessionId;
+
+        // Lấy dư một phần tử để biết còn trang sau hay không
+        int limit = Math.max(pageSize, 0);
+        List<Order> orders;
+        if (cursor == null || cursor.isEmpty()) {
+            orders = index.page(key, 0, limit + 1);
+        } else {
+            long[] position = decodeCursor(cursor);
+            orders = index.olderThan(key, position[0], (int) position[1], limit + 1);
+        }
+
+        String nextCursor = null;
+        if (orders.size() > limit) {
+            orders = orders.subList(0, limit);
+            nextCursor = limit > 0 ? encodeCursor(orders.get(limit - 1)) : null;
+        }
+        return new OrderHistoryPage(new ArrayList<>(orders), index.count(key), nextCursor);
+    }
+
+    /**
+     * Cursor trỏ tới ngay sau đơn này (opaque với client: base64 của "createdAt:id")
+     */
+    public static String encodeCursor(Order order) {
+        String raw = order.getCreatedAt() + ":" + order.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int colon = raw.indexOf(':');
+            return new long[]{Long.parseLong(raw.substring(0, colon)), Integer.parseInt(raw.substring(colon + 1))};
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Cursor không hợp lệ: " + cursor);
+        }
     }
     
     /**
      * Đếm tổng số đơn hàng của session
      */
     public long countOrders(String sessionId) {
-        return orders.values().stream()
-                .filter(order -> order.getSessionId().equals(sessionId))
-                .count();
+        return ordersBySession.count(sessionId);
     }
     
     /**
      * Đếm tổng số đơn hàng theo userEmail
      */
     public long countOrdersByEmail(String userEmail) {
-        return orders.values().stream()
-                .filter(order -> userEmail.equals(order.getUserEmail()))
-                .count();
+        return ordersByEmail.count(userEmail);
     }
     
     /**
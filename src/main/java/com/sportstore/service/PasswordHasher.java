@@ -0,0 +1,284 @@
+package com.sportstore.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Băm và kiểm tra mật khẩu bằng PBKDF2-HMAC-SHA256 (có sẵn trong JDK, không cần thư viện ngoài)
+ * - Định dạng lưu: pbkdf2$<số vòng>$<salt base64>$<hash base64>; số vòng nằm trong chuỗi nên đổi cấu hình không làm hỏng hash cũ
+ * - Số vòng được đo lúc khởi động để mỗi lần băm tốn khoảng target-ms trên máy đang chạy (không thấp hơn MIN_ITERATIONS)
+ * - Việc băm chạy trên pool riêng có giới hạn (mặc định mỗi CPU một thread), không chiếm thread của Tomcat;
+ *   hàng đợi đầy thì từ chối ngay (RejectedExecutionException) thay vì để request xếp hàng vô hạn
+ * - Cache các lần đăng nhập đúng gần đây: khóa là HMAC (khóa ngẫu nhiên theo tiến trình) của email + hash đang lưu + mật khẩu,
+ *   không giữ mật khẩu gốc; đổi mật khẩu là hash đổi nên mục cache cũ tự mất hiệu lực. Lần nhập sai không được cache
+ * - Mật khẩu cũ lưu dạng plaintext (hoặc hash yếu rõ rệt: dưới MIN_ITERATIONS hoặc dưới một nửa số vòng hiện tại)
+ *   vẫn kiểm tra được và được băm lại khi đăng nhập đúng; số vòng đo lại mỗi lần khởi động dao động quanh một giá trị,
+ *   chênh lệch đó không đủ để băm lại toàn bộ user
+ */
+@Component
+public class PasswordHasher {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordHasher.class);
+
+    static final String PREFIX = "pbkdf2$";
+    static final int MIN_ITERATIONS = 100_000;
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int CALIBRATION_ITERATIONS = 20_000;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int iterations;
+    private final int threads;
+    private final ThreadPoolExecutor executor;
+    // Hash giả để email không tồn tại vẫn tốn thời gian như email có thật (không lộ email nào đã đăng ký)
+    private final String dummyHash;
+
+    private final SecretKeySpec cacheKey;
+    private final Map<String, Long> verified = new ConcurrentHashMap<>();
+    private final int cacheSize;
+    private final long cacheTtlMs;
+
+    public PasswordHasher(@Value("${sportstore.auth.hash-iterations:0}") int iterations,
+                          @Value("${sportstore.auth.hash-target-ms:100}") long targetMs,
+                          @Value("${sportstore.auth.hash-threads:0}") int threads,
+                          @Value("${sportstore.auth.hash-queue:256}") int queueSize,
+                          @Value("${sportstore.auth.verify-cache-size:10000}") int cacheSize,
+                          @Value("${sportstore.auth.verify-cache-ttl:10m}") Duration cacheTtl) {
+        this.iterations = iterations > 0 ? iterations : calibrate(targetMs);
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread thread = new Thread(r, "password-hash-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.dummyHash = hash("dummy-password", this.iterations);
+        byte[] key = new byte[32];
+        RANDOM.nextBytes(key);
+        this.cacheKey = new SecretKeySpec(key, "HmacSHA256");
+        this.cacheSize = cacheSize;
+        this.cacheTtlMs = cacheTtl.toMillis();
+        log.info("PBKDF2: {} vòng, {} thread băm, hàng đợi {}", this.iterations, this.threads, queueSize);
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Băm mật khẩu mới trên pool băm
+     */
+    public CompletableFuture<String> hashAsync(String password) {
+        return submit(() -> hash(password, iterations));
+    }
+
+    /**
+     * Kiểm tra mật khẩu với giá trị đang lưu (hash hoặc plaintext cũ)
+     * Lần đăng nhập đúng gần đây nằm trong cache thì trả kết quả ngay trên thread gọi, không qua pool băm
+     * Mật khẩu null (client không gửi) luôn là MISMATCH
+     * @param account email, tham gia vào khóa cache
+     * @param stored  giá trị đang lưu; null nghĩa là tài khoản không tồn tại (vẫn băm giả để thời gian như nhau)
+     */
+    public CompletableFuture<Verification> verifyAsync(String account, String password, String stored) {
+        if (stored == null) {
+            return submit(() -> {
+                verify(password, dummyHash);
+                return Verification.MISMATCH;
+            });
+        }
+        if (password == null) {
+            return CompletableFuture.completedFuture(Verification.MISMATCH);
+        }
+        String cacheEntry = cacheEntry(account, stored, password);
+        Long expiresAt = verified.get(cacheEntry);
+        if (expiresAt != null && expiresAt > System.currentTimeMillis()) {
+            return CompletableFuture.completedFuture(Verification.MATCH);
+        }
+        return submit(() -> {
+            if (!verify(password, stored)) {
+                return Verification.MISMATCH;
+            }
+            if (needsRehash(stored)) {
+                // Băm lại ngay trên thread này; hash mới chưa nằm trong cache, lần sau đăng nhập sẽ được cache
+                return new Verification(true, hash(password, iterations));
+            }
+            remember(cacheEntry);
+            return Verification.MATCH;
+        });
+    }
+
+    /**
+     * Lỗi của future trả về từ hashAsync/verifyAsync là do pool băm quá tải (người gọi nên báo "thử lại sau")
+     */
+    public static boolean isOverloaded(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof RejectedExecutionException;
+    }
+
+    /**
+     * Giá trị đang lưu là plaintext cũ, hoặc hash dưới MIN_ITERATIONS / dưới một nửa số vòng hiện tại
+     */
+    boolean needsRehash(String stored) {
+        if (!stored.startsWith(PREFIX)) {
+            return true;
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return true;
+        }
+        int rounds = Integer.parseInt(parts[1]);
+        return rounds < MIN_ITERATIONS || rounds < iterations / 2;
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        // Mang requestId sang thread băm để log vẫn nối được với request
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                if (mdc != null) {
+                    MDC.setContextMap(mdc);
+                }
+                try {
+                    return task.get();
+                } finally {
+                    MDC.clear();
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            log.warn("Hàng đợi băm mật khẩu đầy ({} việc đang chờ), từ chối request", executor.getQueue().size());
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void remember(String cacheEntry) {
+        long now = System.currentTimeMillis();
+        if (verified.size() >= cacheSize) {
+            verified.values().removeIf(expiresAt -> expiresAt <= now);
+            if (verified.size() >= cacheSize) {
+                // Vẫn đầy: xóa hết, chỉ tốn thêm một lần băm cho mỗi người đăng nhập lại
+                verified.clear();
+            }
+        }
+        verified.put(cacheEntry, now + cacheTtlMs);
+    }
+
+    private String cacheEntry(String account, String stored, String password) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(cacheKey);
+            mac.update(account.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(stored.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return Base64.getEncoder().encodeToString(mac.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // ===== Hàm băm thuần, chạy trên thread gọi (dùng trong pool băm và PasswordHashBenchmark) =====
+
+    static String hash(String password, int iterations) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, iterations, HASH_BITS);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(hash);
+    }
+
+    /**
+     * So khớp mật khẩu với hash PBKDF2, hoặc với plaintext cũ (chưa có tiền tố pbkdf2$); so sánh không phụ thuộc thời gian
+     */
+    static boolean verify(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        if (!stored.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(stored.getBytes(StandardCharsets.UTF_8), password.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        try {
+            int rounds = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, salt, rounds, expected.length * 8));
+        } catch (IllegalArgumentException e) {
+            log.warn("Hash mật khẩu sai định dạng");
+            return false;
+        }
+    }
+
+    /**
+     * Số vòng để một lần băm tốn khoảng targetMs trên máy này, làm tròn lên bội số 10.000
+     */
+    static int calibrate(long targetMs) {
+        // Chạy vài lần cho JIT làm nóng, lấy lần nhanh nhất để ít bị nhiễu
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            pbkdf2("calibration", new byte[SALT_BYTES], CALIBRATION_ITERATIONS, HASH_BITS);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double perIteration = (double) best / CALIBRATION_ITERATIONS;
+        long rounds = (long) (targetMs * 1_000_000L / perIteration);
+        rounds = (rounds + 9_999) / 10_000 * 10_000;
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_ITERATIONS, rounds));
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations, int bits) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, bits);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Kết quả kiểm tra mật khẩu
+     * @param upgradedHash hash mới cần lưu thay giá trị cũ (plaintext hoặc ít vòng), null nếu không cần đổi
+     */
+    public record Verification(boolean matches, String upgradedHash) {
+
+        static final Verification MATCH = new Verification(true, null);
+        static final Verification MISMATCH = new Verification(false, null);
+    }
+}
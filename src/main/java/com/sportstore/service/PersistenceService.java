@@ -0,0 +1,90 @@
+package com.sportstore.service;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sportstore.model.PersistenceStats;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service quản lý việc lưu file nền (write-behind)
+ * Dùng một thread riêng để ghi file, các service chỉ cần submit snapshot mới nhất
+ *
+ * Cấu hình (application.properties):
+ *   sportstore.persistence.delay-ms - thời gian gom các thay đổi trước khi ghi
+ *   sportstore.persistence.fsync    - có fsync file trước khi rename hay không
+ */
+@Service
+public class PersistenceService {
+
+    private final long delayMs;
+    private final boolean fsync;
+    private final ScheduledExecutorService executor;
+    private final Map<String, WriteBehindFile> files = new ConcurrentHashMap<>();
+    private final List<OrderJournal> journals = new CopyOnWriteArrayList<>();
+
+    public PersistenceService(
+            @Value("${sportstore.persistence.delay-ms:500}") long delayMs,
+            @Value("${sportstore.persistence.fsync:true}") boolean fsync) {
+        this.delayMs = delayMs;
+        this.fsync = fsync;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Tạo (hoặc lấy lại) file write-behind theo tên
+     */
+    public WriteBehindFile register(String name, Path target, ObjectWriter writer) {
+        return files.computeIfAbsent(name, n -> new WriteBehindFile(n, target, writer, executor, delayMs, fsync));
+    }
+
+    /**
+     * Mở journal (snapshot + log nối thêm), việc compact chạy trên thread ghi nền
+     */
+    public OrderJournal openJournal(Path snapshot, Path log, JsonCodec jsonCodec, int compactEvery, long groupCommitMs) {
+        OrderJournal journal = new OrderJournal(snapshot, log, jsonCodec, executor, fsync, compactEvery, groupCommitMs);
+        journals.add(journal);
+        return journal;
+    }
+
+    /**
+     * Ghi ngay tất cả thay đổi đang chờ
+     */
+    public void flushAll() {
+        files.values().forEach(WriteBehindFile::flush);
+    }
+
+    public List<PersistenceStats> getStats() {
+        List<PersistenceStats> stats = new ArrayList<>();
+        files.values().forEach(file -> stats.add(file.getStats()));
+        journals.forEach(journal -> stats.add(journal.getStats()));
+        return stats;
+    }
+
+    // Khi tắt server: ghi nốt phần còn chờ rồi mới dừng thread
+    @PreDestroy
+    public void shutdown() {
+        flushAll();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journals.forEach(OrderJournal::close);
+    }
+}
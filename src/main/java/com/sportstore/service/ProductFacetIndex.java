@@ -0,0 +1,366 @@
+package com.sportstore.service;
+
+import com.sportstore.model.Product;
+import com.sportstore.model.ProductFacets;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Chỉ mục facet dạng bitmap cho filterProducts
+ * - Mỗi nhóm danh mục (men/women/accessories/shoes), mỗi size, mỗi màu có một BitSet theo id sản phẩm
+ * - Giá được giữ trong mảng đã sắp xếp để cắt khoảng bằng binary search
+ * - Một request filter chỉ còn là vài phép AND trên bitmap
+ * BitSet đã đưa vào index chỉ bị thay thế (clone rồi sửa), không sửa tại chỗ
+ */
+public class ProductFacetIndex {
+
+    static final String[] GROUPS = {"men", "women", "accessories", "shoes"};
+
+    private BitSet all = new BitSet();
+    private final Map<String, BitSet> groups = new HashMap<>();
+    private final Map<String, BitSet> sizes = new HashMap<>();
+    private final Map<String, BitSet> colors = new HashMap<>();
+
+    // Nhãn hiển thị (chữ hoa/thường gốc) cho từng khóa size/màu
+    private final Map<String, String> sizeLabels = new HashMap<>();
+    private final Map<String, String> colorLabels = new HashMap<>();
+
+    // Giá tăng dần + id tương ứng; sản phẩm không có giá nằm riêng (luôn qua bộ lọc giá)
+    private double[] sortedPrices = new double[0];
+    private int[] sortedPriceIds = new int[0];
+    private BitSet nullPrice = new BitSet();
+
+    // Khóa facet của từng sản phẩm, dùng để gỡ khỏi index và đếm facet
+    private IntObjectMap<FacetKeys> keysById = new IntObjectMap<>();
+
+    /**
+     * Bản sao để sửa tiếp mà không ảnh hưởng bản gốc
+     * BitSet và mảng giá không bao giờ bị sửa tại chỗ nên chỉ cần sao chép các map (nông)
+     */
+    public ProductFacetIndex copy() {
+        ProductFacetIndex copy = new ProductFacetIndex();
+        copy.all = all;
+        copy.groups.putAll(groups);
+        copy.sizes.putAll(sizes);
+        copy.colors.putAll(colors);
+        copy.sizeLabels.putAll(sizeLabels);
+        copy.colorLabels.putAll(colorLabels);
+        copy.sortedPrices = sortedPrices;
+        copy.sortedPriceIds = sortedPriceIds;
+        copy.nullPrice = nullPrice;
+        copy.keysById = keysById.copy();
+        return copy;
+    }
+
+    /**
+     * Dựng index cho cả danh sách trong một lượt
+     * Trong lúc dựng, bitmap chưa được chia sẻ nên được set trực tiếp thay vì clone
+     */
+    public static ProductFacetIndex build(Collection<Product> products) {
+        ProductFacetIndex index = new ProductFacetIndex();
+        index.keysById = new IntObjectMap<>(products.size());
+        List<Product> priced = new ArrayList<>(products.size());
+
+        for (Product product : products) {
+            int id = product.getId();
+            FacetKeys keys = FacetKeys.of(product);
+            index.keysById.put(id, keys);
+            index.all.set(id);
+            for (String group : keys.groups) {
+                index.groups.computeIfAbsent(group, k -> new BitSet()).set(id);
+            }
+            for (int i = 0; i < keys.sizes.length; i++) {
+                index.sizes.computeIfAbsent(keys.sizes[i], k -> new BitSet()).set(id);
+                index.sizeLabels.putIfAbsent(keys.sizes[i], keys.sizeLabels[i]);
+            }
+            for (int i = 0; i < keys.colors.length; i++) {
+                index.colors.computeIfAbsent(keys.colors[i], k -> new BitSet()).set(id);
+                index.colorLabels.putIfAbsent(keys.colors[i], keys.colorLabels[i]);
+            }
+            if (product.getPrice() == null) {
+                index.nullPrice.set(id);
+            } else {
+                priced.add(product);
+            }
+        }
+
+        priced.sort(Comparator.comparingDouble(Product::getPrice));
+        index.sortedPrices = new double[priced.size()];
+        index.sortedPriceIds = new int[priced.size()];
+        for (int i = 0; i < priced.size(); i++) {
+            index.sortedPrices[i] = priced.get(i).getPrice();
+            index.sortedPriceIds[i] = priced.get(i).getId();
+        }
+        return index;
+    }
+
+    /**
+     * Thêm (hoặc cập nhật) một sản phẩm vào index
+     */
+    public void add(Product product) {
+        remove(product.getId());
+        int id = product.getId();
+        FacetKeys keys = FacetKeys.of(product);
+        keysById.put(id, keys);
+
+        all = with(all, id);
+        for (String group : keys.groups) {
+            groups.put(group, with(groups.get(group), id));
+        }
+        for (int i = 0; i < keys.sizes.length; i++) {
+            sizes.put(keys.sizes[i], with(sizes.get(keys.sizes[i]), id));
+            sizeLabels.putIfAbsent(keys.sizes[i], keys.sizeLabels[i]);
+        }
+        for (int i = 0; i < keys.colors.length; i++) {
+            colors.put(keys.colors[i], with(colors.get(keys.colors[i]), id));
+            colorLabels.putIfAbsent(keys.colors[i], keys.colorLabels[i]);
+        }
+
+        if (product.getPrice() == null) {
+            nullPrice = with(nullPrice, id);
+        } else {
+            insertPrice(product.getPrice(), id);
+        }
+    }
+
+    /**
+     * Gỡ sản phẩm khỏi index
+     */
+    public void remove(int id) {
+        FacetKeys keys = keysById.remove(id);
+        if (keys == null) {
+            return;
+        }
+        all = without(all, id);
+        for (String group : keys.groups) {
+            replaceOrDrop(groups, group, without(groups.get(group), id));
+        }
+        for (String size : keys.sizes) {
+            if (replaceOrDrop(sizes, size, without(sizes.get(size), id))) {
+                sizeLabels.remove(size);
+            }
+        }
+        for (String color : keys.colors) {
+            if (replaceOrDrop(colors, color, without(colors.get(color), id))) {
+                colorLabels.remove(color);
+            }
+        }
+        if (nullPrice.get(id)) {
+            nullPrice = without(nullPrice, id);
+        } else {
+            removePrice(id);
+        }
+    }
+
+    /**
+     * Tính tập id thỏa tất cả điều kiện (tham số null/rỗng = bỏ qua điều kiện)
+     * @return BitSet mới, người gọi được phép sửa
+     */
+    public BitSet match(String group, String size, String color, Double minPrice, Double maxPrice) {
+        BitSet result = (BitSet) all.clone();
+
+        if (group != null && !group.isEmpty()) {
+            BitSet bits = groups.get(group.toLowerCase(Locale.ROOT));
+            if (bits == null) {
+                return new BitSet();
+            }
+            result.and(bits);
+        }
+
+        if (size != null && !size.isEmpty()) {
+            BitSet bits = sizes.get(size.toLowerCase(Locale.ROOT));
+            if (bits == null) {
+                return new BitSet();
+            }
+            result.and(bits);
+        }
+
+        // Màu khớp theo chuỗi con (ví dụ "đen" khớp "Đen nhám"): OR các màu phù hợp rồi AND
+        if (color != null && !color.isEmpty()) {
+            String colorLower = color.toLowerCase(Locale.ROOT);
+            BitSet colorBits = new BitSet();
+            for (Map.Entry<String, BitSet> entry : colors.entrySet()) {
+                if (entry.getKey().contains(colorLower)) {
+                    colorBits.or(entry.getValue());
+                }
+            }
+            result.and(colorBits);
+        }
+
+        if (minPrice != null || maxPrice != null) {
+            result.and(priceRange(minPrice, maxPrice));
+        }
+
+        return result;
+    }
+
+    /**
+     * Đếm số sản phẩm theo từng size/màu/nhóm trong tập kết quả, chỉ một lần duyệt
+     */
+    public ProductFacets count(BitSet matches) {
+        Map<String, Integer> sizeCounts = new HashMap<>();
+        Map<String, Integer> colorCounts = new HashMap<>();
+        Map<String, Integer> groupCounts = new LinkedHashMap<>();
+        for (String group : GROUPS) {
+            groupCounts.put(group, 0);
+        }
+
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            FacetKeys keys = keysById.get(id);
+            if (keys == null) {
+                continue;
+            }
+            for (String group : keys.groups) {
+                groupCounts.merge(group, 1, Integer::sum);
+            }
+            for (String size : keys.sizes) {
+                sizeCounts.merge(sizeLabels.get(size), 1, Integer::sum);
+            }
+            for (String color : keys.colors) {
+                colorCounts.merge(colorLabels.get(color), 1, Integer::sum);
+            }
+        }
+        return new ProductFacets(matches.cardinality(), groupCounts, sizeCounts, colorCounts);
+    }
+
+    private BitSet priceRange(Double minPrice, Double maxPrice) {
+        int from = minPrice == null ? 0 : lowerBound(sortedPrices, minPrice);
+        int to = maxPrice == null ? sortedPrices.length : upperBound(sortedPrices, maxPrice);
+        BitSet bits = (BitSet) nullPrice.clone();
+        for (int i = from; i < to; i++) {
+            bits.set(sortedPriceIds[i]);
+        }
+        return bits;
+    }
+
+    private void insertPrice(double price, int id) {
+        int pos = upperBound(sortedPrices, price);
+        int n = sortedPrices.length;
+        double[] prices = new double[n + 1];
+        int[] ids = new int[n + 1];
+        System.arraycopy(sortedPrices, 0, prices, 0, pos);
+        System.arraycopy(sortedPriceIds, 0, ids, 0, pos);
+        prices[pos] = price;
+        ids[pos] = id;
+        System.arraycopy(sortedPrices, pos, prices, pos + 1, n - pos);
+        System.arraycopy(sortedPriceIds, pos, ids, pos + 1, n - pos);
+        sortedPrices = prices;
+        sortedPriceIds = ids;
+    }
+
+    private void removePrice(int id) {
+        int n = sortedPriceIds.length;
+        for (int pos = 0; pos < n; pos++) {
+            if (sortedPriceIds[pos] == id) {
+                double[] prices = new double[n - 1];
+                int[] ids = new int[n - 1];
+                System.arraycopy(sortedPrices, 0, prices, 0, pos);
+                System.arraycopy(sortedPriceIds, 0, ids, 0, pos);
+                System.arraycopy(sortedPrices, pos + 1, prices, pos, n - pos - 1);
+                System.arraycopy(sortedPriceIds, pos + 1, ids, pos, n - pos - 1);
+                sortedPrices = prices;
+                sortedPriceIds = ids;
+                return;
+            }
+        }
+    }
+
+    // Vị trí đầu tiên có giá >= value
+    private static int lowerBound(double[] values, double value) {
+        int lo = 0, hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < value) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // Vị trí đầu tiên có giá > value
+    private static int upperBound(double[] values, double value) {
+        int lo = 0, hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] <= value) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static BitSet with(BitSet bits, int id) {
+        BitSet copy = bits == null ? new BitSet() : (BitSet) bits.clone();
+        copy.set(id);
+        return copy;
+    }
+
+    private static BitSet without(BitSet bits, int id) {
+        BitSet copy = (BitSet) bits.clone();
+        copy.clear(id);
+        return copy;
+    }
+
+    // Trả về true nếu khóa bị xóa hẳn vì không còn sản phẩm nào
+    private static boolean replaceOrDrop(Map<String, BitSet> index, String key, BitSet bits) {
+        if (bits.isEmpty()) {
+            index.remove(key);
+            return true;
+        }
+        index.put(key, bits);
+        return false;
+    }
+
+    /**
+     * Khóa facet đã chuẩn hóa của một sản phẩm
+     */
+    private static final class FacetKeys {
+        final String[] groups;
+        final String[] sizes;
+        final String[] sizeLabels;
+        final String[] colors;
+        final String[] colorLabels;
+
+        private FacetKeys(String[] groups, String[] sizes, String[] sizeLabels, String[] colors, String[] colorLabels) {
+            this.groups = groups;
+            this.sizes = sizes;
+            this.sizeLabels = sizeLabels;
+            this.colors = colors;
+            this.colorLabels = colorLabels;
+        }
+
+        static FacetKeys of(Product product) {
+            String cat = product.getCategory() != null ? product.getCategory().toLowerCase(Locale.ROOT) : "";
+            List<String> groups = new ArrayList<>(2);
+            if (cat.startsWith("men")) groups.add("men");
+            if (cat.startsWith("women")) groups.add("women");
+            if (cat.startsWith("accessories")) groups.add("accessories");
+            if (cat.contains("shoes")) groups.add("shoes");
+
+            String[][] sizes = normalize(product.getSizes());
+            String[][] colors = normalize(product.getColors());
+            return new FacetKeys(groups.toArray(new String[0]), sizes[0], sizes[1], colors[0], colors[1]);
+        }
+
+        // Trả về {khóa chữ thường, nhãn gốc}, bỏ null và trùng lặp
+        private static String[][] normalize(List<String> values) {
+            if (values == null || values.isEmpty()) {
+                return new String[][]{new String[0], new String[0]};
+            }
+            Map<String, String> unique = new LinkedHashMap<>();
+            for (String value : values) {
+                if (value != null) {
+                    unique.putIfAbsent(value.toLowerCase(Locale.ROOT), value);
+                }
+            }
+            return new String[][]{
+                    unique.keySet().toArray(new String[0]),
+                    unique.values().toArray(new String[0])
+            };
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.sportstore.service;
+
+import com.sportstore.model.Product;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Chỉ mục đảo (inverted index) cho tìm kiếm sản phẩm
+ * - Văn bản được chuẩn hóa: chữ thường + bỏ dấu tiếng Việt ("Giày" -> "giay")
+ * - Token là các n-gram độ dài 1..3, nên vẫn giữ được ngữ nghĩa "chứa chuỗi con"
+ * - Posting list là mảng id sản phẩm đã sắp xếp, chỉ bị thay thế chứ không sửa tại chỗ
+ */
+public class ProductSearchIndex {
+
+    private static final int MAX_GRAM = 3;
+    private static final int[] NO_IDS = new int[0];
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    // n-gram của tên + category (dùng cho /api/products/search)
+    private final Map<String, int[]> nameGrams;
+    // n-gram của mô tả (chỉ dùng cho keyword trong filter)
+    private final Map<String, int[]> descriptionGrams;
+    // Văn bản đã chuẩn hóa của từng sản phẩm, dùng để xác nhận ứng viên và gỡ khỏi index
+    private final IntObjectMap<IndexedText> texts;
+
+    public ProductSearchIndex() {
+        this(new HashMap<>(), new HashMap<>(), new IntObjectMap<>());
+    }
+
+    private ProductSearchIndex(Map<String, int[]> nameGrams, Map<String, int[]> descriptionGrams,
+                               IntObjectMap<IndexedText> texts) {
+        this.nameGrams = nameGrams;
+        this.descriptionGrams = descriptionGrams;
+        this.texts = texts;
+    }
+
+    /**
+     * Bản sao để sửa tiếp mà không ảnh hưởng bản gốc
+     * Posting list không bao giờ bị sửa tại chỗ nên chỉ cần sao chép các map (nông)
+     */
+    public ProductSearchIndex copy() {
+        return new ProductSearchIndex(new HashMap<>(nameGrams), new HashMap<>(descriptionGrams), texts.copy());
+    }
+
+    /**
+     * Dựng index cho cả danh sách trong một lượt
+     * Duyệt theo id tăng dần nên posting list chỉ cần nối thêm, không phải chèn
+     */
+    public static ProductSearchIndex build(Collection<Product> products) {
+        Product[] byId = products.toArray(new Product[0]);
+        Arrays.sort(byId, Comparator.comparingInt(Product::getId));
+
+        Map<String, IntList> names = new HashMap<>();
+        Map<String, IntList> descriptions = new HashMap<>();
+        IntObjectMap<IndexedText> texts = new IntObjectMap<>(byId.length);
+        Set<String> grams = new HashSet<>();
+        for (Product product : byId) {
+            IndexedText text = new IndexedText(
+                    fold(product.getName()),
+                    fold(product.getCategory()),
+                    fold(product.getDescription()));
+            texts.put(product.getId(), text);
+
+            grams.clear();
+            collectGrams(text.name, grams);
+            collectGrams(text.category, grams);
+            for (String gram : grams) {
+                names.computeIfAbsent(gram, g -> new IntList()).add(product.getId());
+            }
+
+            grams.clear();
+            collectGrams(text.description, grams);
+            for (String gram : grams) {
+                descriptions.computeIfAbsent(gram, g -> new IntList()).add(product.getId());
+            }
+        }
+        return new ProductSearchIndex(toPostings(names), toPostings(descriptions), texts);
+    }
+
+    private static Map<String, int[]> toPostings(Map<String, IntList> lists) {
+        Map<String, int[]> postings = new HashMap<>(lists.size() * 2);
+        lists.forEach((gram, ids) -> postings.put(gram, ids.toArray()));
+        return postings;
+    }
+
+    /**
+     * Chuẩn hóa chuỗi: chữ thường, bỏ dấu, đ -> d
+     */
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        String stripped = COMBINING_MARKS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+        return stripped.replace('đ', 'd');
+    }
+
+    /**
+     * Thêm (hoặc cập nhật) một sản phẩm vào index
+     */
+    public void add(Product product) {
+        remove(product.getId());
+        IndexedText text = new IndexedText(
+                fold(product.getName()),
+                fold(product.getCategory()),
+                fold(product.getDescription()));
+        texts.put(product.getId(), text);
+
+        Set<String> grams = new HashSet<>();
+        collectGrams(text.name, grams);
+        collectGrams(text.category, grams);
+        for (String gram : grams) {
+            nameGrams.put(gram, insert(nameGrams.get(gram), product.getId()));
+        }
+
+        grams.clear();
+        collectGrams(text.description, grams);
+        for (String gram : grams) {
+            descriptionGrams.put(gram, insert(descriptionGrams.get(gram), product.getId()));
+        }
+    }
+
+    /**
+     * Gỡ sản phẩm khỏi index
+     */
+    public void remove(int productId) {
+        IndexedText text = texts.remove(productId);
+        if (text == null) {
+            return;
+        }
+        Set<String> grams = new HashSet<>();
+        collectGrams(text.name, grams);
+        collectGrams(text.category, grams);
+        removeFromPostings(nameGrams, grams, productId);
+
+        grams.clear();
+        collectGrams(text.description, grams);
+        removeFromPostings(descriptionGrams, grams, productId);
+    }
+
+    /**
+     * Tìm id sản phẩm có tên/category (và mô tả nếu includeDescription) chứa keyword
+     * @return mảng id tăng dần
+     */
+    public int[] search(String keyword, boolean includeDescription) {
+        String query = fold(keyword).trim();
+        if (query.isEmpty()) {
+            return NO_IDS;
+        }
+
+        int[] matches = searchField(nameGrams, query, true);
+        if (includeDescription) {
+            matches = union(matches, searchField(descriptionGrams, query, false));
+        }
+        return matches;
+    }
+
+    private int[] searchField(Map<String, int[]> grams, String query, boolean nameField) {
+        // Query ngắn chính là một n-gram: posting list là kết quả chính xác
+        if (query.length() <= MAX_GRAM) {
+            int[] posting = grams.get(query);
+            return posting != null ? posting : NO_IDS;
+        }
+
+        // Query dài: giao các posting list trigram, rồi xác nhận lại bằng contains
+        List<int[]> postings = new ArrayList<>();
+        for (int i = 0; i + MAX_GRAM <= query.length(); i++) {
+            int[] posting = grams.get(query.substring(i, i + MAX_GRAM));
+            if (posting == null) {
+                return NO_IDS;
+            }
+            postings.add(posting);
+        }
+        postings.sort((a, b) -> Integer.compare(a.length, b.length));
+
+        int[] candidates = postings.get(0);
+        for (int i = 1; i < postings.size() && candidates.length > 0; i++) {
+            candidates = intersect(candidates, postings.get(i));
+        }
+
+        int[] verified = new int[candidates.length];
+        int count = 0;
+        for (int id : candidates) {
+            IndexedText text = texts.get(id);
+            boolean match = nameField
+                    ? text.name.contains(query) || text.category.contains(query)
+                    : text.description.contains(query);
+            if (match) {
+                verified[count++] = id;
+            }
+        }
+        return count == verified.length ? verified : Arrays.copyOf(verified, count);
+    }
+
+    private static void collectGrams(String text, Set<String> out) {
+        int length = text.length();
+        for (int start = 0; start < length; start++) {
+            for (int n = 1; n <= MAX_GRAM && start + n <= length; n++) {
+                out.add(text.substring(start, start + n));
+            }
+        }
+    }
+
+    private static void removeFromPostings(Map<String, int[]> index, Set<String> grams, int id) {
+        for (String gram : grams) {
+            int[] posting = index.get(gram);
+            if (posting == null) {
+                continue;
+            }
+            int[] updated = delete(posting, id);
+            if (updated.length == 0) {
+                index.remove(gram);
+            } else {
+                index.put(gram, updated);
+            }
+        }
+    }
+
+    // Chèn id vào mảng đã sắp xếp (trả về mảng mới)
+    private static int[] insert(int[] posting, int id) {
+        if (posting == null) {
+            return new int[]{id};
+        }
+        int pos = Arrays.binarySearch(posting, id);
+        if (pos >= 0) {
+            return posting;
+        }
+        pos = -pos - 1;
+        int[] result = new int[posting.length + 1];
+        System.arraycopy(posting, 0, result, 0, pos);
+        result[pos] = id;
+        System.arraycopy(posting, pos, result, pos + 1, posting.length - pos);
+        return result;
+    }
+
+    // Xóa id khỏi mảng đã sắp xếp (trả về mảng mới)
+    private static int[] delete(int[] posting, int id) {
+        int pos = Arrays.binarySearch(posting, id);
+        if (pos < 0) {
+            return posting;
+        }
+        int[] result = new int[posting.length - 1];
+        System.arraycopy(posting, 0, result, 0, pos);
+        System.arraycopy(posting, pos + 1, result, pos, posting.length - pos - 1);
+        return result;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                result[count++] = a[i];
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        if (b.length == 0) return a;
+        if (a.length == 0) return b;
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, count = 0;
+        while (i < a.length || j < b.length) {
+            if (j >= b.length || (i < a.length && a[i] < b[j])) {
+                result[count++] = a[i++];
+            } else if (i >= a.length || b[j] < a[i]) {
+                result[count++] = b[j++];
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private record IndexedText(String name, String category, String description) {}
+
+    // Mảng int tự giãn, chỉ dùng khi dựng index
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.sportstore.service;
+
+import com.sportstore.model.Product;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Thứ tự sắp xếp dựng sẵn cho filterProducts (price_asc, price_desc, name_asc, name_desc)
+ * - Mỗi khóa sắp xếp giữ một mảng id theo đúng thứ tự và một mảng hạng (rank) theo id
+ * - Chỉ dựng lại khi danh sách sản phẩm thay đổi, request không phải sort lại
+ * - Kết quả đã lọc chỉ cần duyệt theo thứ tự dựng sẵn và dừng sau offset + limit phần tử
+ * Đối tượng bất biến sau khi build
+ */
+public class ProductSortIndex {
+
+    public enum SortKey {
+        PRICE_ASC("price_asc"),
+        PRICE_DESC("price_desc"),
+        NAME_ASC("name_asc"),
+        NAME_DESC("name_desc");
+
+        private final String param;
+
+        SortKey(String param) {
+            this.param = param;
+        }
+
+        // Trả về null nếu tham số sort không được hỗ trợ (giữ thứ tự mặc định)
+        public static SortKey fromParam(String sort) {
+            if (sort == null) {
+                return null;
+            }
+            for (SortKey key : values()) {
+                if (key.param.equals(sort)) {
+                    return key;
+                }
+            }
+            return null;
+        }
+    }
+
+    // Khi số kết quả nhỏ hơn 1/8 catalog thì gom rồi sort theo rank thay vì duyệt cả mảng thứ tự
+    private static final int SELECTIVE_RATIO = 8;
+
+    private final Map<SortKey, int[]> orders = new EnumMap<>(SortKey.class);
+    private final Map<SortKey, int[]> ranks = new EnumMap<>(SortKey.class);
+    private final int size;
+
+    private ProductSortIndex(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Dựng toàn bộ thứ tự sắp xếp từ danh sách sản phẩm
+     * Hòa nhau thì id nhỏ đứng trước (giống sort ổn định trên danh sách gốc)
+     */
+    public static ProductSortIndex build(Collection<Product> products) {
+        Product[] byId = products.toArray(new Product[0]);
+        Arrays.sort(byId, Comparator.comparingInt(Product::getId));
+
+        Comparator<Product> priceAsc = Comparator.comparing(Product::getPrice,
+                Comparator.nullsLast(Comparator.<Double>naturalOrder()));
+        Comparator<Product> priceDesc = Comparator.comparing(Product::getPrice,
+                Comparator.nullsLast(Comparator.<Double>reverseOrder()));
+        Comparator<Product> nameAsc = Comparator.comparing(Product::getName,
+                Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+        Comparator<Product> nameDesc = Comparator.comparing(Product::getName,
+                Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER.reversed()));
+
+        int maxId = byId.length == 0 ? 0 : byId[byId.length - 1].getId();
+        ProductSortIndex index = new ProductSortIndex(byId.length);
+        index.put(SortKey.PRICE_ASC, byId, priceAsc, maxId);
+        index.put(SortKey.PRICE_DESC, byId, priceDesc, maxId);
+        index.put(SortKey.NAME_ASC, byId, nameAsc, maxId);
+        index.put(SortKey.NAME_DESC, byId, nameDesc, maxId);
+        return index;
+    }
+
+    private void put(SortKey key, Product[] byId, Comparator<Product> comparator, int maxId) {
+        Product[] sorted = byId.clone();
+        Arrays.sort(sorted, comparator); // TimSort ổn định: hòa nhau giữ thứ tự id
+        int[] order = new int[sorted.length];
+        int[] rank = new int[maxId + 1];
+        for (int i = 0; i < sorted.length; i++) {
+            order[i] = sorted[i].getId();
+            rank[order[i]] = i;
+        }
+        orders.put(key, order);
+        ranks.put(key, rank);
+    }
+
+    /**
+     * Lấy tối đa limit id (bỏ qua offset id đầu) trong tập matches theo thứ tự sort
+     * sort không hỗ trợ/null: giữ thứ tự id tăng dần
+     */
+    public int[] select(BitSet matches, String sort, int offset, int limit) {
+        int total = matches.cardinality();
+        int from = Math.min(Math.max(offset, 0), total);
+        int count = (int) Math.min((long) total - from, Math.max(limit, 0));
+        int[] result = new int[count];
+        if (count == 0) {
+            return result;
+        }
+
+        SortKey key = SortKey.fromParam(sort);
+        if (key == null) {
+            int seen = 0, filled = 0;
+            for (int id = matches.nextSetBit(0); id >= 0 && filled < count; id = matches.nextSetBit(id + 1)) {
+                if (seen++ >= from) {
+                    result[filled++] = id;
+                }
+            }
+            return result;
+        }
+
+        if ((long) total * SELECTIVE_RATIO < size) {
+            // Ít kết quả: gom (rank, id) rồi sort, không cần duyệt cả catalog
+            int[] rank = ranks.get(key);
+            long[] packed = new long[total];
+            int n = 0;
+            for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+                packed[n++] = ((long) rank[id] << 32) | id;
+            }
+            Arrays.sort(packed);
+            for (int i = 0; i < count; i++) {
+                result[i] = (int) packed[from + i];
+            }
+            return result;
+        }
+
+        // Nhiều kết quả: duyệt theo thứ tự dựng sẵn và dừng ngay khi đủ (top-K)
+        int seen = 0, filled = 0;
+        for (int id : orders.get(key)) {
+            if (matches.get(id) && seen++ >= from) {
+                result[filled++] = id;
+                if (filled == count) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,136 @@
+package com.sportstore.service;
+
+import com.sportstore.model.PromoUsage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bộ đếm lượt dùng mã giảm giá, không dùng lock
+ * - Mỗi (khách hàng, mã) và mỗi mã (tổng toàn shop) có một AtomicInteger riêng
+ * - reserve() tăng cả hai bộ đếm bằng CAS, chỉ khi còn dưới giới hạn; thiếu lượt thì hoàn lại, không để lệch số
+ * - release() trả lại một lượt đã giữ (đơn hàng không tạo được)
+ * - Khi lưu file chỉ ghi bản chụp bất biến (snapshot()), thread ghi nền không đọc bộ đếm đang bị sửa
+ */
+public class PromoRedemptions {
+
+    public enum Result {
+        RESERVED,
+        USER_LIMIT_REACHED,
+        TOTAL_LIMIT_REACHED
+    }
+
+    // khách hàng -> (mã -> số lần đã dùng)
+    private final Map<String, Map<String, AtomicInteger>> perCustomer = new ConcurrentHashMap<>();
+    // mã -> tổng số lần đã dùng
+    private final Map<String, AtomicInteger> totals = new ConcurrentHashMap<>();
+
+    /**
+     * Giữ một lượt dùng mã cho khách hàng
+     * @param maxPerUser số lượt tối đa mỗi người
+     * @param maxTotal   số lượt tối đa toàn shop (<= 0 là không giới hạn)
+     */
+    public Result reserve(String customer, String code, int maxPerUser, int maxTotal) {
+        AtomicInteger user = userCounter(customer, code);
+        if (!incrementBelow(user, maxPerUser)) {
+            return Result.USER_LIMIT_REACHED;
+        }
+        AtomicInteger total = totalCounter(code);
+        if (!incrementBelow(total, maxTotal > 0 ? maxTotal : Integer.MAX_VALUE)) {
+            user.decrementAndGet();
+            return Result.TOTAL_LIMIT_REACHED;
+        }
+        return Result.RESERVED;
+    }
+
+    /**
+     * Trả lại một lượt đã giữ bằng reserve() (bộ đếm không xuống dưới 0)
+     */
+    public void release(String customer, String code) {
+        Map<String, AtomicInteger> usage = perCustomer.get(customer);
+        AtomicInteger user = usage != null ? usage.get(code) : null;
+        if (user != null) {
+            decrementAboveZero(user);
+        }
+        AtomicInteger total = totals.get(code);
+        if (total != null) {
+            decrementAboveZero(total);
+        }
+    }
+
+    public int usedBy(String customer, String code) {
+        Map<String, AtomicInteger> usage = perCustomer.get(customer);
+        AtomicInteger counter = usage != null ? usage.get(code) : null;
+        return counter != null ? counter.get() : 0;
+    }
+
+    public int usedTotal(String code) {
+        AtomicInteger counter = totals.get(code);
+        return counter != null ? counter.get() : 0;
+    }
+
+    /**
+     * Nạp lại số liệu đã lưu (chỉ gọi lúc khởi động)
+     */
+    public void restore(PromoUsage usage) {
+        if (usage.getPerCustomer() != null) {
+            usage.getPerCustomer().forEach((customer, codes) -> codes.forEach((code, count) ->
+                    userCounter(customer, code).set(count)));
+        }
+        if (usage.getTotals() != null) {
+            usage.getTotals().forEach((code, count) -> totalCounter(code).set(count));
+        }
+    }
+
+    /**
+     * Chụp số liệu hiện tại thành PromoUsage với các map bất biến (để ghi file)
+     */
+    public PromoUsage snapshot() {
+        Map<String, Map<String, Integer>> customers = new HashMap<>();
+        perCustomer.forEach((customer, codes) -> {
+            Map<String, Integer> counts = new HashMap<>();
+            codes.forEach((code, count) -> counts.put(code, count.get()));
+            customers.put(customer, Map.copyOf(counts));
+        });
+        Map<String, Integer> totalCounts = new HashMap<>();
+        totals.forEach((code, count) -> totalCounts.put(code, count.get()));
+        PromoUsage usage = new PromoUsage();
+        usage.setPerCustomer(Map.copyOf(customers));
+        usage.setTotals(Map.copyOf(totalCounts));
+        return usage;
+    }
+
+    private AtomicInteger userCounter(String customer, String code) {
+        return perCustomer.computeIfAbsent(customer, s -> new ConcurrentHashMap<>())
+                .computeIfAbsent(code, c -> new AtomicInteger());
+    }
+
+    private AtomicInteger totalCounter(String code) {
+        return totals.computeIfAbsent(code, c -> new AtomicInteger());
+    }
+
+    // Tăng counter nếu giá trị hiện tại còn nhỏ hơn limit (vòng CAS, không khóa)
+    private static boolean incrementBelow(AtomicInteger counter, int limit) {
+        while (true) {
+            int current = counter.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Giảm counter nếu còn lớn hơn 0 (vòng CAS, không khóa)
+    private static void decrementAboveZero(AtomicInteger counter) {
+        while (true) {
+            int current = counter.get();
+            if (current <= 0 || counter.compareAndSet(current, current - 1)) {
+                return;
+            }
+        }
+    }
+}
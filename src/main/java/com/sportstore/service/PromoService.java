@@ -0,0 +1,342 @@
+package com.sportstore.service;
+
+import com.sportstore.model.CartItem;
+import com.sportstore.model.CartResponse;
+import com.sportstore.model.PromoCode;
+import com.sportstore.model.PromoCodeResponse;
+import com.sportstore.model.PromoUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Service quản lý mã giảm giá
+ * - Danh sách mã lưu ở data/promo-codes.json, số lượt đã dùng ở data/promo-usage.json (ghi nền)
+ * - Mỗi mã được biên dịch một lần thành predicate cho từng sản phẩm trong giỏ (category, đã giảm giá...)
+ * - Đọc không cần lock: danh sách mã là map bất biến, được thay mới khi admin sửa
+ * - Lượt dùng tính theo khách hàng: email nếu đã đăng nhập, không thì session
+ */
+@Service
+public class PromoService {
+
+    private static final Logger log = LoggerFactory.getLogger(PromoService.class);
+
+    private final PromoRedemptions redemptions = new PromoRedemptions();
+    private volatile Map<String, CompiledPromo> promos = Collections.emptyMap();
+
+    private final WriteBehindFile codesFile;
+    private final WriteBehindFile usageFile;
+
+    public PromoService(PersistenceService persistenceService, JsonCodec jsonCodec) {
+        Path codesPath = Paths.get("data/promo-codes.json");
+        Path usagePath = Paths.get("data/promo-usage.json");
+        this.codesFile = persistenceService.register("promo-codes", codesPath, jsonCodec.promoCodeListWriter());
+        this.usageFile = persistenceService.register("promo-usage", usagePath, jsonCodec.promoUsageWriter());
+
+        try {
+            List<PromoCode> codes;
+            if (Files.exists(codesPath)) {
+                codes = jsonCodec.promoCodeListReader().readValue(codesPath.toFile());
+            } else {
+                // Lần chạy đầu: tạo mã mặc định APEX15
+                codes = new ArrayList<>();
+                codes.add(new PromoCode("APEX15", 0.15, 3, "Giảm 15% cho sản phẩm chưa giảm giá"));
+            }
+            Map<String, CompiledPromo> compiled = new LinkedHashMap<>();
+            for (PromoCode promo : codes) {
+                promo.setCode(normalize(promo.getCode()));
+                compiled.put(promo.getCode(), new CompiledPromo(promo));
+            }
+            promos = Collections.unmodifiableMap(compiled);
+            if (!Files.exists(codesPath)) {
+                codesFile.submit(getAll());
+            }
+
+            if (Files.exists(usagePath)) {
+                PromoUsage usage = jsonCodec.promoUsageReader().readValue(usagePath.toFile());
+                redemptions.restore(usage);
+            }
+            log.info("Đã load {} mã giảm giá", promos.size());
+        } catch (Exception e) {
+            log.error("Lỗi đọc dữ liệu mã giảm giá", e);
+        }
+    }
+
+    /**
+     * Khóa khách hàng để đếm lượt dùng mã
+     */
+    public static String customerKey(String sessionId, String userEmail) {
+        if (userEmail != null && !userEmail.isEmpty()) {
+            return "user:" + userEmail.trim().toLowerCase(Locale.ROOT);
+        }
+        return "session:" + sessionId;
+    }
+
+    // ===== Quản lý mã (admin) =====
+
+    public List<PromoCode> getAll() {
+        List<PromoCode> result = new ArrayList<>();
+        promos.values().forEach(compiled -> result.add(compiled.promo));
+        return result;
+    }
+
+    public PromoCode getByCode(String code) {
+        CompiledPromo compiled = code != null ? promos.get(normalize(code)) : null;
+        return compiled != null ? compiled.promo : null;
+    }
+
+    /**
+     * Tạo mới hoặc thay thế mã (theo code)
+     * @throws IllegalArgumentException nếu dữ liệu không hợp lệ
+     */
+    public synchronized PromoCode save(PromoCode promo) {
+        validate(promo);
+        promo.setCode(normalize(promo.getCode()));
+        Map<String, CompiledPromo> next = new LinkedHashMap<>(promos);
+        next.put(promo.getCode(), new CompiledPromo(promo));
+        publish(next);
+        return promo;
+    }
+
+    public synchronized boolean delete(String code) {
+        if (code == null || !promos.containsKey(normalize(code))) {
+            return false;
+        }
+        Map<String, CompiledPromo> next = new LinkedHashMap<>(promos);
+        next.remove(normalize(code));
+        publish(next);
+        return true;
+    }
+
+    // ===== Áp dụng mã =====
+
+    /**
+     * Kiểm tra mã trên giỏ hàng (chưa giữ lượt dùng)
+     */
+    public PromoCodeResponse evaluate(String customer, String code, CartResponse cart) {
+        if (code == null || code.trim().isEmpty()) {
+            return invalid(null, "Vui lòng nhập mã giảm giá");
+        }
+        code = normalize(code);
+        CompiledPromo compiled = promos.get(code);
+        if (compiled == null || !compiled.promo.isActive()) {
+            return invalid(code, "Mã giảm giá không tồn tại");
+        }
+
+        long now = System.currentTimeMillis();
+        if (compiled.validFrom > now) {
+            return invalid(code, "Mã giảm giá chưa có hiệu lực");
+        }
+        if (compiled.validUntil < now) {
+            return invalid(code, "Mã giảm giá đã hết hạn");
+        }
+
+        // Kiểm tra số lần sử dụng
+        int remaining = compiled.promo.getMaxUsesPerUser() - redemptions.usedBy(customer, code);
+        if (remaining <= 0) {
+            return invalid(code, "Bạn đã sử dụng hết lượt giảm giá này");
+        }
+        if (compiled.promo.getMaxTotalUses() > 0 && redemptions.usedTotal(code) >= compiled.promo.getMaxTotalUses()) {
+            return invalid(code, "Mã giảm giá đã hết lượt sử dụng");
+        }
+
+        double[] eligible = new double[1];
+        double subtotal = sumEligible(cart, List.of(compiled), eligible);
+        if (subtotal < compiled.minSubtotal) {
+            return invalid(code, "Đơn hàng chưa đạt giá trị tối thiểu " + (long) compiled.minSubtotal + "đ để dùng mã này");
+        }
+        double discountAmount = eligible[0] * compiled.promo.getDiscountPercent();
+        if (discountAmount == 0) {
+            return invalid(code, "Giỏ hàng không có sản phẩm áp dụng được mã này");
+        }
+        return valid(compiled, remaining, discountAmount);
+    }
+
+    /**
+     * Kiểm tra rồi giữ một lượt dùng mã (nguyên tử) cho đơn hàng
+     */
+    public PromoCodeResponse redeem(String customer, String code, CartResponse cart) {
+        PromoCodeResponse response = evaluate(customer, code, cart);
+        if (!response.isValid()) {
+            return response;
+        }
+        CompiledPromo compiled = promos.get(response.getCode());
+        if (compiled == null) {
+            // Mã vừa bị admin xóa
+            return invalid(response.getCode(), "Mã giảm giá không tồn tại");
+        }
+        PromoCode promo = compiled.promo;
+        PromoRedemptions.Result result = redemptions.reserve(customer, response.getCode(),
+                promo.getMaxUsesPerUser(), promo.getMaxTotalUses());
+        if (result != PromoRedemptions.Result.RESERVED) {
+            log.debug("Không giữ được lượt dùng mã {}: {}", response.getCode(), result);
+            return invalid(response.getCode(), result == PromoRedemptions.Result.USER_LIMIT_REACHED
+                    ? "Bạn đã sử dụng hết lượt giảm giá này"
+                    : "Mã giảm giá đã hết lượt sử dụng");
+        }
+        saveUsage();
+        return response;
+    }
+
+    /**
+     * Trả lại lượt dùng mã đã giữ bằng redeem() khi đơn hàng không tạo được
+     */
+    public void release(String customer, String code) {
+        if (code == null) {
+            return;
+        }
+        redemptions.release(customer, normalize(code));
+        saveUsage();
+    }
+
+    /**
+     * Các mã đang áp dụng được cho giỏ hàng, giảm nhiều nhất trước
+     * Duyệt giỏ hàng đúng một lượt cho tất cả các mã
+     */
+    public List<PromoCodeResponse> applicable(String customer, CartResponse cart) {
+        long now = System.currentTimeMillis();
+        List<CompiledPromo> candidates = new ArrayList<>();
+        List<Integer> remainingUses = new ArrayList<>();
+        for (CompiledPromo compiled : promos.values()) {
+            PromoCode promo = compiled.promo;
+            int remaining = promo.getMaxUsesPerUser() - redemptions.usedBy(customer, promo.getCode());
+            boolean exhausted = promo.getMaxTotalUses() > 0
+                    && redemptions.usedTotal(promo.getCode()) >= promo.getMaxTotalUses();
+            if (promo.isActive() && compiled.validFrom <= now && now <= compiled.validUntil
+                    && remaining > 0 && !exhausted) {
+                candidates.add(compiled);
+                remainingUses.add(remaining);
+            }
+        }
+
+        double[] eligible = new double[candidates.size()];
+        double subtotal = sumEligible(cart, candidates, eligible);
+
+        List<PromoCodeResponse> result = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            CompiledPromo compiled = candidates.get(i);
+            double discountAmount = eligible[i] * compiled.promo.getDiscountPercent();
+            if (subtotal >= compiled.minSubtotal && discountAmount > 0) {
+                result.add(valid(compiled, remainingUses.get(i), discountAmount));
+            }
+        }
+        result.sort(Comparator.comparingDouble(PromoCodeResponse::getDiscountAmount).reversed());
+        return result;
+    }
+
+    // Một lượt qua giỏ hàng: cộng thành tiền từng dòng vào tổng của mọi mã mà dòng đó thỏa
+    private static double sumEligible(CartResponse cart, List<CompiledPromo> promos, double[] eligible) {
+        double subtotal = 0;
+        if (cart.getItems() == null) {
+            return subtotal;
+        }
+        for (CartItem item : cart.getItems()) {
+            double lineTotal = item.getPrice() * item.getQuantity();
+            subtotal += lineTotal;
+            for (int i = 0; i < eligible.length; i++) {
+                if (promos.get(i).eligible.test(item)) {
+                    eligible[i] += lineTotal;
+                }
+            }
+        }
+        return subtotal;
+    }
+
+    // Chụp và submit trong cùng lock: bản được submit sau luôn là bản chụp sau,
+    // bản cuối cùng đã gồm mọi lần giữ/trả lượt đã xong
+    private void saveUsage() {
+        synchronized (usageFile) {
+            usageFile.submit(redemptions.snapshot());
+        }
+    }
+
+    private void publish(Map<String, CompiledPromo> next) {
+        promos = Collections.unmodifiableMap(next);
+        codesFile.submit(getAll());
+    }
+
+    private static void validate(PromoCode promo) {
+        if (promo == null || promo.getCode() == null || promo.getCode().trim().isEmpty()) {
+            throw new IllegalArgumentException("Thiếu mã giảm giá");
+        }
+        if (promo.getDiscountPercent() <= 0 || promo.getDiscountPercent() > 1) {
+            throw new IllegalArgumentException("discountPercent phải trong khoảng (0, 1]");
+        }
+        if (promo.getMaxUsesPerUser() <= 0) {
+            throw new IllegalArgumentException("maxUsesPerUser phải lớn hơn 0");
+        }
+        if (promo.getMaxTotalUses() < 0) {
+            throw new IllegalArgumentException("maxTotalUses không được âm");
+        }
+        if (promo.getValidFrom() != null && promo.getValidUntil() != null
+                && promo.getValidFrom() > promo.getValidUntil()) {
+            throw new IllegalArgumentException("validFrom phải trước validUntil");
+        }
+    }
+
+    private static String normalize(String code) {
+        return code.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private static PromoCodeResponse invalid(String code, String message) {
+        PromoCodeResponse response = new PromoCodeResponse(false, message);
+        response.setCode(code);
+        return response;
+    }
+
+    private static PromoCodeResponse valid(CompiledPromo compiled, int remaining, double discountAmount) {
+        PromoCode promo = compiled.promo;
+        PromoCodeResponse response = new PromoCodeResponse(true,
+                "Áp dụng mã thành công! Giảm " + (int) (promo.getDiscountPercent() * 100) + "%");
+        response.setCode(promo.getCode());
+        response.setDiscountPercent(promo.getDiscountPercent());
+        response.setRemainingUses(remaining);
+        response.setDiscountAmount(discountAmount);
+        return response;
+    }
+
+    /**
+     * Mã giảm giá đã biên dịch: điều kiện từng sản phẩm gộp thành một predicate, mốc thời gian dạng long
+     */
+    private static final class CompiledPromo {
+        final PromoCode promo;
+        final Predicate<CartItem> eligible;
+        final long validFrom;
+        final long validUntil;
+        final double minSubtotal;
+
+        CompiledPromo(PromoCode promo) {
+            this.promo = promo;
+            this.validFrom = promo.getValidFrom() != null ? promo.getValidFrom() : Long.MIN_VALUE;
+            this.validUntil = promo.getValidUntil() != null ? promo.getValidUntil() : Long.MAX_VALUE;
+            this.minSubtotal = promo.getMinSubtotal() != null ? promo.getMinSubtotal() : 0;
+
+            Predicate<CartItem> predicate = item -> true;
+            if (promo.isExcludeDiscounted()) {
+                // Chỉ áp dụng cho sản phẩm chưa được shop giảm giá
+                predicate = item -> item.getDiscountPercent() == null || item.getDiscountPercent() == 0;
+            }
+            if (promo.getCategories() != null && !promo.getCategories().isEmpty()) {
+                Set<String> categories = new HashSet<>();
+                promo.getCategories().forEach(c -> categories.add(c.trim().toLowerCase(Locale.ROOT)));
+                predicate = predicate.and(item -> item.getCategory() != null
+                        && categories.contains(item.getCategory().toLowerCase(Locale.ROOT)));
+            }
+            this.eligible = predicate;
+        }
+    }
+}
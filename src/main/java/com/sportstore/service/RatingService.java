@@ -1,7 +1,7 @@
 package com.sportstore.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
@@ -12,13 +12,16 @@ import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class RatingService {
+
+    private static final Logger log = LoggerFactory.getLogger(RatingService.class);
     
     private final Map<String, Map<String, Integer>> ratings = new ConcurrentHashMap<>();
     // Structure: { "productId": { "userEmail": rating } }
     
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonCodec jsonCodec;
     
-    public RatingService() {
+    public RatingService(JsonCodec jsonCodec) {
+        this.jsonCodec = jsonCodec;
         loadRatingsFromFile();
     }
     
@@ -28,28 +31,22 @@ public class RatingService {
             
             if (file.exists()) {
                 // Load from file system
-                Map<String, Map<String, Integer>> loaded = objectMapper.readValue(
-                    file, 
-                    new TypeReference<Map<String, Map<String, Integer>>>() {}
-                );
+                Map<String, Map<String, Integer>> loaded = jsonCodec.ratingsReader().readValue(file);
                 ratings.putAll(loaded);
-                System.out.println("Loaded " + ratings.size() + " product ratings from file");
+                log.info("Loaded {} product ratings from file", ratings.size());
             } else {
                 // Try loading from classpath
                 InputStream is = getClass().getResourceAsStream("/data/ratings.json");
                 if (is != null) {
-                    Map<String, Map<String, Integer>> loaded = objectMapper.readValue(
-                        is, 
-                        new TypeReference<Map<String, Map<String, Integer>>>() {}
-                    );
+                    Map<String, Map<String, Integer>> loaded = jsonCodec.ratingsReader().readValue(is);
                     ratings.putAll(loaded);
-                    System.out.println("Loaded " + ratings.size() + " product ratings from classpath");
+                    log.info("Loaded {} product ratings from classpath", ratings.size());
                 } else {
-                    System.out.println("No ratings file found, starting with empty ratings");
+                    log.info("No ratings file found, starting with empty ratings");
                 }
             }
         } catch (Exception e) {
-            System.err.println("Error loading ratings: " + e.getMessage());
+            log.error("Error loading ratings", e);
         }
     }
     
@@ -57,10 +54,10 @@ public class RatingService {
         try {
             File file = new File("src/main/resources/data/ratings.json");
             file.getParentFile().mkdirs();
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(file, ratings);
-            System.out.println("Saved ratings to file");
+            jsonCodec.ratingsWriter().writeValue(file, ratings);
+            log.debug("Saved ratings to file");
         } catch (Exception e) {
-            System.err.println("Error saving ratings: " + e.getMessage());
+            log.error("Error saving ratings", e);
         }
     }
     
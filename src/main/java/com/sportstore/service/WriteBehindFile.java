@@ -0,0 +1,147 @@
+package com.sportstore.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sportstore.model.PersistenceStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Một file JSON được ghi kiểu write-behind
+ * - submit() chỉ giữ lại giá trị mới nhất và hẹn lịch ghi, không ghi trên thread của request
+ * - Nhiều lần submit liên tiếp trong khoảng delay được gộp thành một lần ghi
+ * - Ghi ra file tạm rồi rename nguyên tử, nên file đích không bao giờ bị ghi dở
+ * Tạo qua PersistenceService
+ */
+public class WriteBehindFile {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindFile.class);
+
+    private final String name;
+    private final Path target;
+    private final ObjectWriter writer;
+    private final ScheduledExecutorService executor;
+    private final long delayMs;
+    private final boolean fsync;
+
+    private final AtomicReference<Object> pending = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicLong firstPendingAt = new AtomicLong(0);
+    private final AtomicLong unwritten = new AtomicLong(0);
+
+    private final AtomicLong submitted = new AtomicLong(0);
+    private final AtomicLong written = new AtomicLong(0);
+    private final AtomicLong coalesced = new AtomicLong(0);
+    private volatile long lastLagMs;
+    private volatile long maxLagMs;
+    private volatile String lastError;
+
+    WriteBehindFile(String name, Path target, ObjectWriter writer, ScheduledExecutorService executor,
+                    long delayMs, boolean fsync) {
+        this.name = name;
+        this.target = target;
+        // Không để Jackson tự đóng stream, vì còn cần fsync trước khi đóng
+        this.writer = writer.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.executor = executor;
+        this.delayMs = delayMs;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Đăng ký giá trị cần lưu (giá trị phải bất biến hoặc không bị sửa sau khi submit)
+     */
+    public void submit(Object value) {
+        submitted.incrementAndGet();
+        unwritten.incrementAndGet();
+        firstPendingAt.compareAndSet(0, System.currentTimeMillis());
+        pending.set(value);
+        if (scheduled.compareAndSet(false, true)) {
+            executor.schedule(this::drain, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Ghi ngay phần đang chờ (nếu có) trên thread hiện tại
+     */
+    public void flush() {
+        drain();
+    }
+
+    private synchronized void drain() {
+        scheduled.set(false);
+        long since = firstPendingAt.getAndSet(0);
+        long batch = unwritten.getAndSet(0);
+        Object value = pending.getAndSet(null);
+        if (value == null) {
+            return;
+        }
+
+        try {
+            writeAtomically(value);
+            written.incrementAndGet();
+            if (batch > 1) {
+                coalesced.addAndGet(batch - 1);
+            }
+            long lag = since > 0 ? System.currentTimeMillis() - since : 0;
+            lastLagMs = lag;
+            maxLagMs = Math.max(maxLagMs, lag);
+            lastError = null;
+            log.debug("Đã lưu {} vào file (gộp {} thay đổi, trễ {}ms)", name, batch, lag);
+        } catch (IOException e) {
+            lastError = e.getMessage();
+            log.error("Lỗi ghi file {}", target, e);
+            // Giữ lại và hẹn ghi lại sau (trừ khi đã có giá trị mới hơn)
+            pending.compareAndSet(null, value);
+            unwritten.addAndGet(batch);
+            firstPendingAt.compareAndSet(0, since);
+            if (!executor.isShutdown() && scheduled.compareAndSet(false, true)) {
+                executor.schedule(this::drain, Math.max(delayMs, 1000), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void writeAtomically(Object value) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = parent.resolve(target.getFileName() + ".tmp");
+
+        try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            writer.writeValue(out, value);
+            if (fsync) {
+                out.getChannel().force(true);
+            }
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public PersistenceStats getStats() {
+        PersistenceStats stats = new PersistenceStats();
+        stats.setName(name);
+        stats.setPath(target.toString());
+        stats.setSubmitted(submitted.get());
+        stats.setWritten(written.get());
+        stats.setCoalesced(coalesced.get());
+        stats.setLastLagMs(lastLagMs);
+        stats.setMaxLagMs(maxLagMs);
+        stats.setPending(pending.get() != null);
+        stats.setLastError(lastError);
+        return stats;
+    }
+}
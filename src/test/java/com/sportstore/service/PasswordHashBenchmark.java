@@ -0,0 +1,93 @@
+package com.sportstore.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Đo thông lượng đăng nhập (số lần kiểm tra mật khẩu mỗi giây) trên máy hiện tại
+ * - Băm thật: N thread cùng kiểm tra PBKDF2 với số vòng đã hiệu chỉnh, in tổng và số lần mỗi giây trên một core
+ * - Cache: lần đăng nhập lặp lại được trả từ cache HMAC, không chạy PBKDF2
+ * Nằm trong src/test nên không đi vào jar; không phải test (surefire không chạy), chạy tay sau mvn test-compile
+ * (không khởi động Spring, không đụng dữ liệu):
+ *   mvn -q dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -cp target/classes:target/test-classes:$(cat target/cp.txt) com.sportstore.service.PasswordHashBenchmark \
+ *        [target-ms] [giây mỗi lượt]
+ */
+public final class PasswordHashBenchmark {
+
+    private PasswordHashBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        long targetMs = args.length > 0 ? Long.parseLong(args[0]) : 100;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 5;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        int iterations = PasswordHasher.calibrate(targetMs);
+        String stored = PasswordHasher.hash("benchmark-password", iterations);
+        System.out.printf("CPU: %d core, PBKDF2-HMAC-SHA256 %d vòng (mục tiêu %d ms/lần)%n", cores, iterations, targetMs);
+
+        System.out.println();
+        System.out.println("Băm thật (cache miss):");
+        System.out.println("threads    lần/giây    lần/giây/core    ms/lần");
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+            double rate = run(threads, seconds, () -> PasswordHasher.verify("benchmark-password", stored));
+            System.out.printf("%7d %11.1f %16.1f %9.1f%n",
+                    threads, rate, rate / Math.min(threads, cores), 1000.0 * threads / rate);
+            if (threads == cores) {
+                break;
+            }
+        }
+
+        PasswordHasher hasher = new PasswordHasher(iterations, targetMs, cores, 256, 10_000, Duration.ofMinutes(10));
+        try {
+            // Lần đầu đi qua pool băm và được ghi vào cache, các lần sau chỉ tính HMAC
+            hasher.verifyAsync("bench@example.com", "benchmark-password", stored).join();
+            System.out.println();
+            System.out.println("Đăng nhập lặp lại (cache hit):");
+            double rate = run(cores, seconds, () ->
+                    hasher.verifyAsync("bench@example.com", "benchmark-password", stored).join().matches());
+            System.out.printf("%7d %11.1f %16.1f%n", cores, rate, rate / cores);
+        } finally {
+            hasher.shutdown();
+        }
+    }
+
+    // Chạy task liên tục trên `threads` thread trong `seconds` giây, trả về số lần mỗi giây
+    private static double run(int threads, long seconds, BooleanSupplier task) throws InterruptedException {
+        // Làm nóng JIT trước khi đo
+        for (int i = 0; i < 3; i++) {
+            check(task.getAsBoolean());
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder done = new LongAdder();
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                while (running.get()) {
+                    check(task.getAsBoolean());
+                    done.increment();
+                }
+            }, "bench-" + i);
+            workers.add(worker);
+        }
+        long start = System.nanoTime();
+        workers.forEach(Thread::start);
+        Thread.sleep(seconds * 1000);
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return done.sum() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static void check(boolean matches) {
+        if (!matches) {
+            throw new IllegalStateException("Kiểm tra mật khẩu thất bại");
+        }
+    }
+}